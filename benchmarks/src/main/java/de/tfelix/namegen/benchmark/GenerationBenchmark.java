@@ -0,0 +1,76 @@
+package de.tfelix.namegen.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.MarkovModel;
+import de.tfelix.namegen.model.RuntimeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the names generated per second. Run it with {@code -prof gc} to
+ * see the allocation rate per generated name.
+ *
+ * @author Thomas Felix
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GenerationBenchmark {
+
+	@Param({ "1", "3", "5", "7", "10" })
+	public int order;
+
+	@Param({ "en", "de", "fi", "ru" })
+	public String locale;
+
+	@Param({ "10000" })
+	public int corpusSize;
+
+	private RuntimeModel<Random> model;
+	private Random random;
+	private StringBuilder output;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		final ULocale icuLocale = new ULocale(locale);
+		final MarkovModel trainableModel = new MarkovModel(order, 0.001f, icuLocale);
+		for (String name : SyntheticCorpus.names(icuLocale, corpusSize)) {
+			trainableModel.update(name);
+		}
+		model = trainableModel.build();
+		random = new Random(42);
+		output = new StringBuilder();
+	}
+
+	@Benchmark
+	public String apply() {
+		return model.apply(random);
+	}
+
+	/**
+	 * Generates into a reused builder, which should not allocate at all.
+	 */
+	@Benchmark
+	public int applyAppendable() throws IOException {
+		output.setLength(0);
+		model.apply(random, output);
+		return output.length();
+	}
+}
@@ -0,0 +1,74 @@
+package de.tfelix.namegen.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.NameGen;
+import de.tfelix.namegen.NameGenGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to load a written JSON or binary model file.
+ *
+ * @author Thomas Felix
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoadBenchmark {
+
+	@Param({ "1", "3", "5", "7", "10" })
+	public int order;
+
+	@Param({ "en", "de", "fi", "ru" })
+	public String locale;
+
+	@Param({ "10000" })
+	public int corpusSize;
+
+	private String modelFile;
+	private String binaryModelFile;
+
+	@Setup
+	public void setup() throws IOException {
+		final ULocale icuLocale = new ULocale(locale);
+		final File corpus = SyntheticCorpus.write(icuLocale, corpusSize);
+		final File model = File.createTempFile("model_" + locale + "_" + order, ".json");
+		model.deleteOnExit();
+
+		final NameGenGenerator generator = new NameGenGenerator(order, 0.001f, 0.02f, icuLocale);
+		generator.analyze(corpus.getAbsolutePath());
+		generator.writeModel(model.getAbsolutePath());
+		modelFile = model.getAbsolutePath();
+
+		final File binaryModel = File.createTempFile("model_" + locale + "_" + order, ".bin");
+		binaryModel.deleteOnExit();
+		generator.writeBinaryModel(binaryModel.getAbsolutePath());
+		binaryModelFile = binaryModel.getAbsolutePath();
+	}
+
+	@Benchmark
+	public NameGen<?> loadJson() {
+		return new NameGen<>(modelFile);
+	}
+
+	@Benchmark
+	public NameGen<?> loadBinary() {
+		return new NameGen<>(binaryModelFile);
+	}
+}
@@ -0,0 +1,108 @@
+package de.tfelix.namegen.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.NameGen;
+import de.tfelix.namegen.PooledNameGen;
+import de.tfelix.namegen.model.MarkovModel;
+import de.tfelix.namegen.model.RuntimeModel;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the latency distribution of generating a name on the calling
+ * thread with taking it from a {@link PooledNameGen}. Sample time mode
+ * reports the percentiles. The pool only helps as long as it is refilled
+ * faster than it is drained, the names which had to be generated on the
+ * calling thread are reported as the <code>misses</code> counter of the
+ * pooled benchmark.
+ *
+ * @author Thomas Felix
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoolBenchmark {
+
+	@Param({ "3", "5" })
+	public int order;
+
+	@Param({ "en" })
+	public String locale;
+
+	@Param({ "10000" })
+	public int corpusSize;
+
+	@Param({ "65536" })
+	public int capacity;
+
+	private NameGen<Random> nameGen;
+	private PooledNameGen pool;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		final ULocale icuLocale = new ULocale(locale);
+		final MarkovModel trainableModel = new MarkovModel(order, 0.001f, icuLocale);
+		for (String name : SyntheticCorpus.names(icuLocale, corpusSize)) {
+			trainableModel.update(name);
+		}
+		final RuntimeModel<Random> model = trainableModel.build();
+		nameGen = new NameGen<>(model, new Random(42));
+		pool = new NameGen<>(model, new Random(43)).pooled(capacity, capacity / 2);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Benchmark
+	public String direct() {
+		return nameGen.getName();
+	}
+
+	@Benchmark
+	public String pooled(Misses misses) {
+		return pool.getName();
+	}
+
+	/**
+	 * Counts the misses of the pool during an iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Misses {
+
+		public long misses;
+		private long start;
+
+		@Setup(Level.Iteration)
+		public void start(PoolBenchmark benchmark) {
+			misses = 0;
+			start = benchmark.pool.getMisses();
+		}
+
+		@TearDown(Level.Iteration)
+		public void stop(PoolBenchmark benchmark) {
+			misses = benchmark.pool.getMisses() - start;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package de.tfelix.namegen.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.MarkovModel;
+import de.tfelix.namegen.model.RuntimeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the names scored per second, one at a time and as a batch on all
+ * cores. The scored names are taken from the training corpus.
+ *
+ * @author Thomas Felix
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ScoringBenchmark {
+
+	private static final int BATCH = 100000;
+
+	@Param({ "3", "5" })
+	public int order;
+
+	@Param({ "en" })
+	public String locale;
+
+	@Param({ "10000" })
+	public int corpusSize;
+
+	private RuntimeModel<Random> model;
+	private List<String> names;
+	private int next;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		final ULocale icuLocale = new ULocale(locale);
+		final MarkovModel trainableModel = new MarkovModel(order, 0.001f, icuLocale);
+		names = SyntheticCorpus.names(icuLocale, BATCH);
+		for (String name : names.subList(0, corpusSize)) {
+			trainableModel.update(name);
+		}
+		model = trainableModel.build();
+	}
+
+	@Benchmark
+	public double score() {
+		next = (next + 1) % names.size();
+		return model.score(names.get(next));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public double[] scoreAll() {
+		return model.scoreAll(names);
+	}
+}
@@ -0,0 +1,92 @@
+package de.tfelix.namegen.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.ibm.icu.text.UnicodeSet;
+import com.ibm.icu.util.LocaleData;
+import com.ibm.icu.util.ULocale;
+
+/**
+ * Generates a reproducible training corpus for a locale. The names are glued
+ * together from a fixed inventory of syllables built from the exemplar
+ * alphabet of the locale, so the corpus has the kind of repeating structure
+ * real names have and higher order models find contexts to learn.
+ *
+ * @author Thomas Felix
+ */
+final class SyntheticCorpus {
+
+	private static final long SEED = 0x5EEDL;
+	private static final int SYLLABLES = 60;
+
+	private SyntheticCorpus() {
+		// no instances
+	}
+
+	/**
+	 * Creates the names of the corpus.
+	 *
+	 * @param locale The locale whose alphabet is used.
+	 * @param size   Number of names to create.
+	 * @return The names, always the same for the same arguments.
+	 */
+	static List<String> names(ULocale locale, int size) {
+		final Random random = new Random(SEED);
+		final List<String> alphabet = alphabet(locale);
+		final String[] syllables = new String[SYLLABLES];
+		for (int i = 0; i < syllables.length; i++) {
+			final StringBuilder syllable = new StringBuilder();
+			final int length = 1 + random.nextInt(3);
+			for (int j = 0; j < length; j++) {
+				syllable.append(alphabet.get(random.nextInt(alphabet.size())));
+			}
+			syllables[i] = syllable.toString();
+		}
+
+		final List<String> names = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			final StringBuilder name = new StringBuilder();
+			final int length = 1 + random.nextInt(4);
+			for (int j = 0; j < length; j++) {
+				// Square the random number so some syllables are much more common than others.
+				final double skewed = random.nextDouble() * random.nextDouble();
+				name.append(syllables[(int) (skewed * syllables.length)]);
+			}
+			names.add(name.toString());
+		}
+		return names;
+	}
+
+	/**
+	 * Writes the corpus to a temporary file as it is expected by the
+	 * NameGenGenerator.
+	 *
+	 * @param locale The locale whose alphabet is used.
+	 * @param size   Number of names to create.
+	 * @return The temporary file which is deleted on exit.
+	 * @throws IOException if the file could not be written.
+	 */
+	static File write(ULocale locale, int size) throws IOException {
+		final File file = File.createTempFile("corpus_" + locale, ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), names(locale, size), StandardCharsets.UTF_8);
+		return file;
+	}
+
+	private static List<String> alphabet(ULocale locale) {
+		final UnicodeSet exemplars = LocaleData.getExemplarSet(locale, LocaleData.ES_STANDARD);
+		final List<String> letters = new ArrayList<>(exemplars.size());
+		final Iterator<String> iterator = exemplars.iterator();
+		while (iterator.hasNext()) {
+			letters.add(iterator.next());
+		}
+		return letters;
+	}
+}
@@ -0,0 +1,83 @@
+package de.tfelix.namegen.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.ModelRegistry;
+import de.tfelix.namegen.NameGen;
+import de.tfelix.namegen.model.MarkovModel;
+import de.tfelix.namegen.model.RuntimeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how the throughput of a single generator which is shared by all
+ * benchmark threads scales with the number of threads. Run it with different
+ * thread counts, e.g. {@code -t 1}, {@code -t 4} and {@code -t 16}. The
+ * throughput of the shared {@link Random} flattens once its seed is contended,
+ * the per thread generator should scale with the number of cores. So should
+ * the generator of a {@link ModelRegistry}, which looks up the model of every
+ * name.
+ *
+ * @author Thomas Felix
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ThreadsBenchmark {
+
+	@Param({ "3" })
+	public int order;
+
+	@Param({ "en" })
+	public String locale;
+
+	@Param({ "10000" })
+	public int corpusSize;
+
+	private NameGen<Random> sharedRandom;
+	private NameGen<Random> perThread;
+	private NameGen<Random> registry;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		final ULocale icuLocale = new ULocale(locale);
+		final MarkovModel trainableModel = new MarkovModel(order, 0.001f, icuLocale);
+		for (String name : SyntheticCorpus.names(icuLocale, corpusSize)) {
+			trainableModel.update(name);
+		}
+		final RuntimeModel<Random> model = trainableModel.build();
+		sharedRandom = new NameGen<>(model, new Random(42));
+		perThread = NameGen.concurrent(model);
+		registry = new ModelRegistry(id -> model, Long.MAX_VALUE).nameGen("model");
+	}
+
+	@Benchmark
+	public String sharedRandom() {
+		return sharedRandom.getName();
+	}
+
+	@Benchmark
+	public String perThread() {
+		return perThread.getName();
+	}
+
+	@Benchmark
+	public String registry() {
+		return registry.getName();
+	}
+}
@@ -0,0 +1,86 @@
+package de.tfelix.namegen.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.MarkovModel;
+import de.tfelix.namegen.model.RuntimeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast names are counted into a MarkovModel and how long it
+ * takes to build the runtime model from the counts.
+ *
+ * @author Thomas Felix
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TrainingBenchmark {
+
+	@Param({ "1", "3", "5", "7", "10" })
+	public int order;
+
+	@Param({ "en", "de", "fi", "ru" })
+	public String locale;
+
+	@Param({ "10000" })
+	public int corpusSize;
+
+	private ULocale icuLocale;
+	private List<String> names;
+	private MarkovModel updateModel;
+	private MarkovModel trainedModel;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setupTrial() {
+		icuLocale = new ULocale(locale);
+		names = SyntheticCorpus.names(icuLocale, corpusSize);
+		trainedModel = new MarkovModel(order, 0.001f, icuLocale);
+		for (String name : names) {
+			trainedModel.update(name);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setupIteration() {
+		// Start every iteration with empty counts so the model size stays bounded.
+		updateModel = new MarkovModel(order, 0.001f, icuLocale);
+		next = 0;
+	}
+
+	/**
+	 * Throughput of counting a single name into the model.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void update() {
+		updateModel.update(names.get(next));
+		next = next + 1 == names.size() ? 0 : next + 1;
+	}
+
+	/**
+	 * Time it takes to build the runtime model of the whole corpus.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public RuntimeModel build() {
+		return trainedModel.build();
+	}
+}
@@ -0,0 +1,145 @@
+package de.tfelix.namegen;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over character sequences which can be shared by threads. The
+ * memory is fixed when it is created, independent of how long the sequences
+ * are. A sequence which was added is always reported as contained, a sequence
+ * which was not added is reported as contained with the configured false
+ * positive rate.
+ * <p>
+ * The bits are set with atomic operations. Checking and adding a sequence is
+ * done under a lock stripe chosen by the hash of the sequence, so two threads
+ * adding the same sequence at the same time can not both succeed.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+final class ConcurrentBloomFilter {
+
+	private static final int STRIPES = 64;
+
+	private final AtomicLongArray bits;
+	private final long bitCount;
+	private final int hashCount;
+	private final Object[] locks;
+
+	/**
+	 * Creates a filter which is sized for the expected number of sequences.
+	 *
+	 * @param expectedInsertions
+	 *            Number of sequences which will be added.
+	 * @param falsePositiveRate
+	 *            Rate of not added sequences being reported as contained once
+	 *            the expected number of sequences were added. Between 0 and 1.
+	 */
+	ConcurrentBloomFilter(long expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 1) {
+			throw new IllegalArgumentException("Expected insertions must be at least 1.");
+		}
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+		}
+		final double ln2 = Math.log(2);
+		final long words = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2) / 64);
+		if (words > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The filter would be too big.");
+		}
+		this.bits = new AtomicLongArray((int) Math.max(1, words));
+		this.bitCount = bits.length() * 64L;
+		this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedInsertions * ln2));
+		this.locks = new Object[STRIPES];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Adds the sequence if it is not contained yet.
+	 *
+	 * @param sequence
+	 *            The sequence to add.
+	 * @return True if the sequence was added, false if it is (or seems to be)
+	 *         contained already.
+	 */
+	boolean add(CharSequence sequence) {
+		final long hash1 = mix(hash(sequence));
+		final long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L) | 1;
+		synchronized (locks[(int) (hash1 >>> 58)]) {
+			boolean contained = true;
+			for (int i = 0; i < hashCount && contained; i++) {
+				contained = isSet(Math.floorMod(hash1 + i * hash2, bitCount));
+			}
+			if (contained) {
+				return false;
+			}
+			for (int i = 0; i < hashCount; i++) {
+				set(Math.floorMod(hash1 + i * hash2, bitCount));
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Checks if the sequence was added.
+	 *
+	 * @param sequence
+	 *            The sequence to check.
+	 * @return True if the sequence is (or seems to be) contained.
+	 */
+	boolean mightContain(CharSequence sequence) {
+		final long hash1 = mix(hash(sequence));
+		final long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L) | 1;
+		for (int i = 0; i < hashCount; i++) {
+			if (!isSet(Math.floorMod(hash1 + i * hash2, bitCount))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The memory used by the bits in bytes.
+	 */
+	long byteSize() {
+		return bitCount / 8;
+	}
+
+	private boolean isSet(long bit) {
+		return (bits.get((int) (bit >>> 6)) & (1L << bit)) != 0;
+	}
+
+	private void set(long bit) {
+		final int word = (int) (bit >>> 6);
+		final long mask = 1L << bit;
+		long current;
+		do {
+			current = bits.get(word);
+		} while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the characters.
+	 */
+	private static long hash(CharSequence sequence) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < sequence.length(); i++) {
+			hash ^= sequence.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Finalizer of MurmurHash3 which spreads the bits of the FNV hash.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
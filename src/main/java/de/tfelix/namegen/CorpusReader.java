@@ -0,0 +1,195 @@
+package de.tfelix.namegen;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads training corpora. Plain files are memory mapped and decoded as UTF-8
+ * straight into a {@link LineBuffer}, gzip compressed input is detected by its
+ * magic number and decompressed transparently.
+ *
+ * @author Thomas Felix
+ */
+final class CorpusReader {
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * A single mapping can not be bigger than 2 GB, so large files are mapped
+	 * in multiple regions.
+	 */
+	private static final long MAX_REGION_SIZE = 1L << 30;
+
+	private CorpusReader() {
+		// no instances
+	}
+
+	/**
+	 * Checks if the file starts with the gzip magic number.
+	 *
+	 * @param path
+	 *            The file to check.
+	 * @return True if the file is gzip compressed.
+	 * @throws IOException
+	 *             If the file can not be read.
+	 */
+	static boolean isGzip(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final ByteBuffer magic = ByteBuffer.allocate(2);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				// read until the two bytes are there or the file ended
+			}
+			return magic.position() == 2 && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b;
+		}
+	}
+
+	/**
+	 * Splits an uncompressed file into regions which end after a newline, so
+	 * they can be read independently of each other.
+	 *
+	 * @param path
+	 *            The file to split.
+	 * @param parts
+	 *            The desired number of regions. There might be more if the file
+	 *            is too big to be mapped in this many regions, or less if it has
+	 *            not enough lines.
+	 * @return Start and end offset of every region.
+	 * @throws IOException
+	 *             If the file can not be read.
+	 */
+	static List<long[]> split(Path path, int parts) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final long count = Math.max(parts, (size + MAX_REGION_SIZE - 1) / MAX_REGION_SIZE);
+			final List<long[]> regions = new ArrayList<>();
+			final ByteBuffer probe = ByteBuffer.allocate(256);
+			long start = 0;
+			for (long i = 1; i <= count && start < size; i++) {
+				long end = i == count ? size : Math.max(start, size / count * i);
+				// Move the end behind the next newline. UTF-8 never has a newline byte inside a character.
+				search:
+				while (end < size) {
+					probe.clear();
+					final int read = channel.read(probe, end);
+					for (int j = 0; j < read; j++) {
+						if (probe.get(j) == '\n') {
+							end += j + 1;
+							break search;
+						}
+					}
+					end += Math.max(read, 0);
+				}
+				if (end > start) {
+					regions.add(new long[] { start, end });
+				}
+				start = end;
+			}
+			return regions;
+		}
+	}
+
+	/**
+	 * Memory maps a region of an uncompressed UTF-8 file and feeds it into the
+	 * buffer.
+	 *
+	 * @param path
+	 *            The file to read.
+	 * @param start
+	 *            Offset of the first byte.
+	 * @param end
+	 *            Offset after the last byte.
+	 * @param lines
+	 *            The buffer receiving the decoded characters.
+	 * @throws IOException
+	 *             If the file can not be read.
+	 */
+	static void read(Path path, long start, long end, LineBuffer lines) throws IOException {
+		final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long position = start;
+			while (position < end) {
+				final long length = Math.min(end - position, MAX_REGION_SIZE);
+				final MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				final boolean last = position + length == end;
+				// Underflow means all complete characters of the mapping were decoded.
+				while (decoder.decode(bytes, chars, last).isOverflow()) {
+					drain(chars, lines);
+				}
+				drain(chars, lines);
+				// An incomplete character at the end of a mapping is decoded again with the next one.
+				position += length - bytes.remaining();
+				if (last) {
+					decoder.flush(chars);
+					drain(chars, lines);
+					break;
+				}
+			}
+		}
+		lines.finish();
+	}
+
+	/**
+	 * Reads a character stream and feeds it into the buffer.
+	 *
+	 * @param reader
+	 *            The reader to consume.
+	 * @param lines
+	 *            The buffer receiving the characters.
+	 * @throws IOException
+	 *             If the reader fails.
+	 */
+	static void read(Reader reader, LineBuffer lines) throws IOException {
+		final char[] chars = new char[CHUNK_SIZE];
+		int read;
+		while ((read = reader.read(chars)) >= 0) {
+			lines.feed(chars, 0, read);
+		}
+		lines.finish();
+	}
+
+	/**
+	 * Opens a UTF-8 reader on the stream and decompresses it if it starts with
+	 * the gzip magic number.
+	 *
+	 * @param in
+	 *            The raw stream.
+	 * @return A reader with the decoded characters.
+	 * @throws IOException
+	 *             If the stream can not be read.
+	 */
+	static Reader open(InputStream in) throws IOException {
+		final BufferedInputStream buffered = new BufferedInputStream(in, CHUNK_SIZE);
+		buffered.mark(2);
+		final int first = buffered.read();
+		final int second = buffered.read();
+		buffered.reset();
+		final InputStream decompressed = first == 0x1f && second == 0x8b
+				? new GZIPInputStream(buffered, CHUNK_SIZE)
+				: buffered;
+		return new InputStreamReader(decompressed, StandardCharsets.UTF_8);
+	}
+
+	private static void drain(CharBuffer chars, LineBuffer lines) {
+		chars.flip();
+		lines.feed(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+		chars.clear();
+	}
+}
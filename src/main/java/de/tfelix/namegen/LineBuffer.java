@@ -0,0 +1,150 @@
+package de.tfelix.namegen;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits decoded characters into names and hands every name to a consumer.
+ * The buffer itself is the CharSequence given to the consumer, so no string
+ * is created per line. Lines are trimmed and lower cased before they are
+ * handed over, blank lines are skipped.
+ *
+ * @author Thomas Felix
+ */
+final class LineBuffer implements CharSequence {
+
+	private final Consumer<? super CharSequence> consumer;
+	private char[] chars = new char[64];
+	private int length;
+	private long nameCount;
+	private long charCount;
+
+	/**
+	 * @param consumer
+	 *            Receives every line. The line is only valid during the call.
+	 */
+	LineBuffer(Consumer<? super CharSequence> consumer) {
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Feeds decoded characters. Every newline completes a line.
+	 *
+	 * @param src
+	 *            The characters.
+	 * @param offset
+	 *            Position of the first character.
+	 * @param count
+	 *            Number of characters to feed.
+	 */
+	void feed(char[] src, int offset, int count) {
+		final int end = offset + count;
+		for (int i = offset; i < end; i++) {
+			final char c = src[i];
+			if (c == '\n') {
+				flush();
+			} else {
+				if (length == chars.length) {
+					chars = Arrays.copyOf(chars, length * 2);
+				}
+				chars[length++] = c;
+			}
+		}
+	}
+
+	/**
+	 * Feeds a complete line.
+	 *
+	 * @param line
+	 *            The line without its line terminator.
+	 */
+	void line(CharSequence line) {
+		if (line.length() > chars.length) {
+			chars = new char[line.length()];
+		}
+		for (int i = 0; i < line.length(); i++) {
+			chars[i] = line.charAt(i);
+		}
+		length = line.length();
+		flush();
+	}
+
+	/**
+	 * Completes the last line if the input did not end with a newline.
+	 */
+	void finish() {
+		flush();
+	}
+
+	private void flush() {
+		// Trim like String.trim() does.
+		int start = 0;
+		int end = length;
+		while (start < end && chars[start] <= ' ') {
+			start++;
+		}
+		while (end > start && chars[end - 1] <= ' ') {
+			end--;
+		}
+		if (start > 0) {
+			System.arraycopy(chars, start, chars, 0, end - start);
+		}
+		length = end - start;
+
+		// Lower case in place, code point by code point.
+		int i = 0;
+		while (i < length) {
+			final int codePoint = Character.codePointAt(chars, i, length);
+			final int lower = Character.toLowerCase(codePoint);
+			final int count = Character.charCount(codePoint);
+			if (Character.charCount(lower) == count) {
+				Character.toChars(lower, chars, i);
+			}
+			i += count;
+		}
+
+		if (length > 0) {
+			consumer.accept(this);
+			nameCount++;
+			charCount += length;
+		}
+		length = 0;
+	}
+
+	/**
+	 * @return Number of names handed to the consumer.
+	 */
+	long nameCount() {
+		return nameCount;
+	}
+
+	/**
+	 * @return Number of characters of the names handed to the consumer.
+	 */
+	long charCount() {
+		return charCount;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+		return chars[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+}
@@ -0,0 +1,23 @@
+package de.tfelix.namegen;
+
+/**
+ * Thrown by {@link ModelRegistry} if a model can not be loaded. The cause is
+ * the error of the loader. It is not an invalid argument of the caller, the
+ * next request for the model tries to load it again.
+ *
+ * @author Thomas Felix
+ */
+public class ModelLoadException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param id
+	 *            The id of the model.
+	 * @param cause
+	 *            The error of the loader.
+	 */
+	public ModelLoadException(String id, Throwable cause) {
+		super(String.format("Could not load model %s.", id), cause);
+	}
+}
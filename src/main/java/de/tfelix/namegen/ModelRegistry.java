@@ -0,0 +1,370 @@
+package de.tfelix.namegen;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import de.tfelix.namegen.model.BinaryModelFormat;
+import de.tfelix.namegen.model.RuntimeModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares models between generators. A model is loaded when it is requested
+ * for the first time and kept until the total size of the loaded models
+ * exceeds the limit, then the least recently used models are evicted. If
+ * multiple threads request a model which is not loaded yet, it is loaded only
+ * once and the other threads wait for it.
+ * <p>
+ * The size of a model is the size of its compiled form as written by
+ * {@link BinaryModelFormat}. Requesting a loaded model does not take any
+ * lock.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public class ModelRegistry {
+
+	private final static Logger logger = LoggerFactory.getLogger(ModelRegistry.class);
+
+	/**
+	 * Loads the model with the given id.
+	 */
+	@FunctionalInterface
+	public interface Loader {
+
+		/**
+		 * @param id
+		 *            The id of the model.
+		 * @return The loaded model.
+		 * @throws IOException
+		 *             if the model can not be loaded.
+		 */
+		RuntimeModel<?> load(String id) throws IOException;
+	}
+
+	private final Loader loader;
+	private final long maxBytes;
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Logical clock of the accesses, the entry with the smallest access time is
+	 * the least recently used one. Requests advance it by two, so the names
+	 * generated in between can be stamped with the odd time after the last
+	 * request without advancing it.
+	 */
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+
+	/**
+	 * @param loader
+	 *            Loads the model of an id.
+	 * @param maxBytes
+	 *            Maximal total size of the loaded models. A single model which
+	 *            is bigger is loaded anyway, but evicts all others.
+	 */
+	public ModelRegistry(Loader loader, long maxBytes) {
+		if (loader == null) {
+			throw new IllegalArgumentException("loader can not be null.");
+		}
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative.");
+		}
+		this.loader = loader;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Creates a registry which loads JSON or binary model files.
+	 *
+	 * @param files
+	 *            Maps the id of a model to its file.
+	 * @param maxBytes
+	 *            Maximal total size of the loaded models.
+	 * @return The registry.
+	 */
+	public static ModelRegistry ofFiles(Function<String, Path> files, long maxBytes) {
+		if (files == null) {
+			throw new IllegalArgumentException("files can not be null.");
+		}
+		return new ModelRegistry(id -> NameGen.load(files.apply(id)), maxBytes);
+	}
+
+	/**
+	 * Returns the model, loading it if necessary.
+	 *
+	 * @param id
+	 *            The id of the model.
+	 * @return The model.
+	 * @throws ModelLoadException
+	 *             if the model can not be loaded.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R extends Random> RuntimeModel<R> get(String id) {
+		if (id == null) {
+			throw new IllegalArgumentException("id can not be null.");
+		}
+		Entry entry = entries.get(id);
+		if (entry == null) {
+			final Entry created = new Entry();
+			entry = entries.putIfAbsent(id, created);
+			if (entry == null) {
+				entry = created;
+				misses.increment();
+				load(id, created);
+			} else {
+				hits.increment();
+			}
+		} else {
+			hits.increment();
+		}
+		entry.lastAccess = clock.addAndGet(2);
+		try {
+			return (RuntimeModel<R>) entry.model.join();
+		} catch (CompletionException e) {
+			throw new ModelLoadException(id, e.getCause());
+		}
+	}
+
+	/**
+	 * Creates a generator which asks the registry for the model of every name.
+	 * An evicted model is loaded again on the next name. Creating the
+	 * generator counts as one request, the names it generates do not.
+	 *
+	 * @param id
+	 *            The id of the model.
+	 * @param random
+	 *            The random to generate with.
+	 * @return The generator.
+	 */
+	public <R extends Random> NameGen<R> nameGen(String id, R random) {
+		get(id);
+		return new NameGen<>(() -> this.<R>current(id), random);
+	}
+
+	/**
+	 * Creates a generator which asks the registry for the model of every name
+	 * and can be shared by any number of threads without contention, as every
+	 * thread generates with its own random and looking up a loaded model only
+	 * reads shared state. Creating the generator counts as one request, the
+	 * names it generates do not.
+	 *
+	 * @param id
+	 *            The id of the model.
+	 * @return The generator.
+	 * @see NameGen#concurrent(java.util.function.Supplier)
+	 */
+	public NameGen<Random> nameGen(String id) {
+		get(id);
+		return NameGen.concurrent(() -> this.<Random>current(id));
+	}
+
+	/**
+	 * Looks up the model of a single name of a generator. A loaded model is
+	 * returned without counting a hit and without advancing the clock. Its
+	 * access time is only written if a model was requested since, so threads
+	 * generating with the same model do not write to shared memory. Models
+	 * used by generators since the same request tie. Otherwise the model is
+	 * requested like by {@link #get(String)}.
+	 */
+	@SuppressWarnings("unchecked")
+	private <R extends Random> RuntimeModel<R> current(String id) {
+		final Entry entry = entries.get(id);
+		if (entry != null && entry.model.isDone() && !entry.model.isCompletedExceptionally()) {
+			final long now = clock.get() + 1;
+			if (entry.lastAccess != now) {
+				entry.lastAccess = now;
+			}
+			return (RuntimeModel<R>) entry.model.join();
+		}
+		return get(id);
+	}
+
+	/**
+	 * Removes the model, it is loaded again when it is requested the next
+	 * time.
+	 *
+	 * @param id
+	 *            The id of the model.
+	 */
+	public synchronized void invalidate(String id) {
+		final Entry entry = entries.remove(id);
+		if (entry != null) {
+			bytes.addAndGet(-entry.bytes);
+		}
+	}
+
+	/**
+	 * @return Number of loaded models.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return Total size of the loaded models.
+	 */
+	public long bytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * @return A snapshot of the statistics.
+	 */
+	public Stats stats() {
+		return new Stats(hits.sum(), misses.sum(), loadFailures.sum(), evictions.sum(), loadNanos.sum());
+	}
+
+	private void load(String id, Entry entry) {
+		final long start = System.nanoTime();
+		try {
+			final RuntimeModel<?> model = loader.load(id);
+			if (model == null) {
+				throw new IOException("The loader returned no model.");
+			}
+			final long size = BinaryModelFormat.size(model);
+			account(id, entry, size);
+			entry.model.complete(model);
+			logger.debug("Loaded model {} with {} bytes in {} ms.", id, size, (System.nanoTime() - start) / 1000000);
+			evict(id);
+		} catch (Throwable e) {
+			// Failed loads are not cached, the next request tries again. The
+			// future is completed in any case, otherwise threads waiting for
+			// the model would block forever.
+			entries.remove(id, entry);
+			loadFailures.increment();
+			entry.model.completeExceptionally(e);
+			logger.error("Could not load model {}.", id, e);
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+		} finally {
+			loadNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Adds the size of a loaded model, unless it was invalidated while it was
+	 * loading.
+	 */
+	private synchronized void account(String id, Entry entry, long size) {
+		if (entries.get(id) == entry) {
+			entry.bytes = size;
+			bytes.addAndGet(size);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used models until the loaded models fit into
+	 * the limit. Models which are still loading and the given one are kept.
+	 */
+	private synchronized void evict(String keep) {
+		while (bytes.get() > maxBytes) {
+			Map.Entry<String, Entry> oldest = null;
+			for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+				final Entry entry = candidate.getValue();
+				if (!candidate.getKey().equals(keep) && entry.model.isDone() && !entry.model.isCompletedExceptionally()
+						&& (oldest == null || entry.lastAccess < oldest.getValue().lastAccess)) {
+					oldest = candidate;
+				}
+			}
+			if (oldest == null) {
+				return;
+			}
+			if (entries.remove(oldest.getKey(), oldest.getValue())) {
+				bytes.addAndGet(-oldest.getValue().bytes);
+				evictions.increment();
+				logger.debug("Evicted model {}.", oldest.getKey());
+			}
+		}
+	}
+
+	private static final class Entry {
+		private final CompletableFuture<RuntimeModel<?>> model = new CompletableFuture<>();
+		private volatile long lastAccess;
+		/**
+		 * Size which is accounted for in the total, guarded by the registry.
+		 */
+		private long bytes;
+	}
+
+	/**
+	 * Statistics of a registry since it was created.
+	 */
+	public static final class Stats {
+
+		private final long hits;
+		private final long misses;
+		private final long loadFailures;
+		private final long evictions;
+		private final long loadNanos;
+
+		Stats(long hits, long misses, long loadFailures, long evictions, long loadNanos) {
+			this.hits = hits;
+			this.misses = misses;
+			this.loadFailures = loadFailures;
+			this.evictions = evictions;
+			this.loadNanos = loadNanos;
+		}
+
+		/**
+		 * @return Number of requests for an already loaded or loading model.
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return Number of requests which loaded the model.
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getLoadFailures() {
+			return loadFailures;
+		}
+
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return Total time spent loading models, in nanoseconds.
+		 */
+		public long getTotalLoadNanos() {
+			return loadNanos;
+		}
+
+		/**
+		 * @return Average time of a load, in nanoseconds.
+		 */
+		public double getAverageLoadNanos() {
+			return misses == 0 ? 0 : (double) loadNanos / misses;
+		}
+
+		public double getHitRate() {
+			final long requests = hits + misses;
+			return requests == 0 ? 1 : (double) hits / requests;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Stats: %d hits, %d misses, %d failed loads, %d evictions, %.1f ms average load",
+					hits, misses, loadFailures, evictions, getAverageLoadNanos() / 1000000);
+		}
+	}
+}
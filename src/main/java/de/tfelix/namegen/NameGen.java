@@ -2,10 +2,19 @@ package de.tfelix.namegen;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.tfelix.namegen.model.BinaryModelFormat;
+import de.tfelix.namegen.model.NameConstraints;
 import de.tfelix.namegen.model.RuntimeModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +22,15 @@ import org.slf4j.LoggerFactory;
 /**
  * Name generator main class. This class has to be used as main entry point for
  * the name generation operation.
+ * <p>
+ * A generator can be used by any number of threads at once. How well it
+ * scales with the threads depends on its random: a single
+ * {@link java.util.Random} is safe to share, but every number drawn from it
+ * updates its seed with a compare and set, so threads on different cores
+ * contend on it. Generators created from a file or by
+ * {@link #concurrent(Supplier)} draw from the {@link ThreadLocalRandom} of the
+ * calling thread instead and share no mutable state at all.
+ * </p>
  * 
  * @author Thomas Felix
  *
@@ -20,12 +38,30 @@ import org.slf4j.LoggerFactory;
 public class NameGen<R extends Random> {
 
 	private final static Logger logger = LoggerFactory.getLogger(NameGen.class);
+	/**
+	 * Maximal number of names drawn for a single name while the drawn names
+	 * are in the excluded names.
+	 */
+	private final static int MAX_REJECTIONS = 1000;
 
-	private R random;
-	private final RuntimeModel generator;
+	/**
+	 * Supplies the random for every name, either a fixed one or the one of
+	 * the calling thread.
+	 */
+	private volatile Supplier<? extends R> randoms;
+	/**
+	 * Supplies the model for every name, e.g. the current snapshot of a
+	 * {@link de.tfelix.namegen.model.LiveModel}.
+	 */
+	private final Supplier<? extends RuntimeModel> models;
+	private volatile NameIndex excluded;
 
 	/**
 	 * This will initialize the namegenerator with the data coded inside this file.
+	 * The file can either be a JSON or a binary model file. A binary model file
+	 * is memory mapped and sampled from without being deserialized. Every
+	 * thread generates with its own {@link ThreadLocalRandom} until a random
+	 * is set.
 	 * 
 	 * @param nameFile
 	 *            Path to a name file resource.
@@ -42,31 +78,284 @@ public class NameGen<R extends Random> {
 			throw new IllegalArgumentException("Can not read/open file.");
 		}
 
-		ObjectMapper objectMapper = new ObjectMapper();
+		final RuntimeModel generator;
 		try {
-			generator = objectMapper.readValue(file, RuntimeModel.class);
+			generator = load(file.toPath());
 		} catch (IOException e) {
 			logger.error(e.getLocalizedMessage());
 			throw new IllegalArgumentException("Problematic file %s".format(nameFile));
 		}
-		this.random =  (R)ThreadLocalRandom.current();
+		this.models = () -> generator;
+		this.randoms = NameGen::threadLocalRandom;
+	}
+
+	/**
+	 * Loads a JSON or binary model file.
+	 * 
+	 * @param path
+	 *            The model file.
+	 * @return The loaded model.
+	 * @throws IOException
+	 *             if the file can not be read or parsed.
+	 */
+	@SuppressWarnings("unchecked")
+	static <R extends Random> RuntimeModel<R> load(Path path) throws IOException {
+		if (BinaryModelFormat.isBinary(path)) {
+			return BinaryModelFormat.read(path);
+		}
+		ObjectMapper objectMapper = new ObjectMapper();
+		return objectMapper.readValue(path.toFile(), RuntimeModel.class);
 	}
 
 	public NameGen(RuntimeModel generator, R random) {
-	    this.generator = generator;
-	    this.random = random;
+	    this.models = () -> generator;
+	    setRandom(random);
     }
 
+	/**
+	 * Creates a generator which asks the supplier for the model of every
+	 * name, so it always generates from the latest published snapshot of a
+	 * model which keeps learning. The supplier must not block.
+	 * 
+	 * @param models
+	 *            Supplies the current model.
+	 * @param random
+	 *            The random to generate with.
+	 */
+	public NameGen(Supplier<? extends RuntimeModel<R>> models, R random) {
+		if (models == null) {
+			throw new IllegalArgumentException("models can not be null.");
+		}
+		this.models = models;
+		setRandom(random);
+	}
+
+	private NameGen(Supplier<? extends RuntimeModel<R>> models, Supplier<? extends R> randoms) {
+		if (models == null || randoms == null) {
+			throw new IllegalArgumentException("models and randoms can not be null.");
+		}
+		this.models = models;
+		this.randoms = randoms;
+	}
+
+	/**
+	 * Creates a generator which asks the suppliers for the model and the
+	 * random of every name. The random supplier is called on the generating
+	 * thread, so it can hand out a random per thread.
+	 * 
+	 * @param models
+	 *            Supplies the current model.
+	 * @param randoms
+	 *            Supplies the random of the calling thread, e.g.
+	 *            {@code ThreadLocal::get}.
+	 * @return The generator.
+	 */
+	public static <R extends Random> NameGen<R> perThread(Supplier<? extends RuntimeModel<R>> models,
+			Supplier<? extends R> randoms) {
+		return new NameGen<R>(models, randoms);
+	}
+
+	/**
+	 * Creates a generator which can be shared by any number of threads without
+	 * contention. Every thread generates with its own {@link ThreadLocalRandom}.
+	 * 
+	 * @param models
+	 *            Supplies the current model.
+	 * @return The generator.
+	 */
+	public static NameGen<Random> concurrent(Supplier<? extends RuntimeModel<Random>> models) {
+		return perThread(models, ThreadLocalRandom::current);
+	}
+
+	/**
+	 * Creates a generator of a single model which can be shared by any number
+	 * of threads without contention.
+	 * 
+	 * @param model
+	 *            The model to generate from.
+	 * @return The generator.
+	 * @see #concurrent(Supplier)
+	 */
+	public static NameGen<Random> concurrent(RuntimeModel<Random> model) {
+		if (model == null) {
+			throw new IllegalArgumentException("model can not be null.");
+		}
+		return concurrent(() -> model);
+	}
+
+	/**
+	 * Sets a random which is used by all threads. Sharing a
+	 * {@link java.util.Random} between many threads is safe, but slow.
+	 * 
+	 * @param random
+	 *            The random to generate with.
+	 */
 	public void setRandom(R random) {
-	    this.random = random;
+	    this.randoms = () -> random;
     }
 
+	/**
+	 * The model only uses the methods of {@link Random}, so the random of the
+	 * calling thread can stand in for any type of random.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <R extends Random> R threadLocalRandom() {
+		return (R) ThreadLocalRandom.current();
+	}
+
+	/**
+	 * Sets names which are never returned, usually the names the model was
+	 * trained on. A generated name which is in the index is thrown away and
+	 * another one is drawn.
+	 * 
+	 * @param excluded
+	 *            The names to reject or null to return every name.
+	 * @see NameGenGenerator#buildNameIndex()
+	 */
+	public void setExcluded(NameIndex excluded) {
+		this.excluded = excluded;
+	}
+
 	/**
 	 * Returns a new name, based on the learned model file.
 	 * 
 	 * @return A new random name.
+	 * @throws NoSuchElementException
+	 *             if only excluded names were drawn within the maximal number
+	 *             of attempts.
 	 */
 	public String getName() throws RuntimeException {
-		return generator.apply(random);
+		return generate(models.get(), randoms.get(), excluded);
+	}
+
+	/**
+	 * Draws names from the model until one is not excluded.
+	 */
+	@SuppressWarnings("unchecked")
+	static String generate(RuntimeModel model, Random random, NameIndex excluded) {
+		return draw(() -> model.apply(random), excluded);
+	}
+
+	/**
+	 * Draws names until one is not excluded.
+	 */
+	private static String draw(Supplier<String> draw, NameIndex excluded) {
+		String name = draw.get();
+		for (int attempt = 1; excluded != null && excluded.contains(name); attempt++) {
+			if (attempt == MAX_REJECTIONS) {
+				throw new NoSuchElementException(String.format(
+						"Only excluded names were generated in %d attempts.", MAX_REJECTIONS));
+			}
+			name = draw.get();
+		}
+		return name;
+	}
+
+	/**
+	 * Returns a new name within the constraints, e.g. with a given length and
+	 * prefix. Generating it takes at most as many samples as the maximal
+	 * length of the name.
+	 * 
+	 * @param constraints
+	 *            The bounds of the name.
+	 * @return A new random name.
+	 * @throws NoSuchElementException
+	 *             if only excluded names were drawn within the maximal number
+	 *             of attempts.
+	 */
+	@SuppressWarnings("unchecked")
+	public String getName(NameConstraints constraints) {
+		final RuntimeModel model = models.get();
+		final R random = randoms.get();
+		return draw(() -> model.apply(random, constraints), excluded);
+	}
+
+	/**
+	 * Creates a pool of names which are generated ahead of time by a
+	 * background thread, for callers which need names with a very low
+	 * latency. Close the pool to stop the thread.
+	 * 
+	 * @param capacity
+	 *            Number of names the pool holds.
+	 * @param lowWatermark
+	 *            The pool is refilled once it holds fewer names.
+	 * @return The pool.
+	 * @see PooledNameGen
+	 */
+	public PooledNameGen pooled(int capacity, int lowWatermark) {
+		return new PooledNameGen(this, capacity, lowWatermark);
+	}
+
+	/**
+	 * Generates a batch of names on all cores. Every worker uses its own
+	 * {@link SplittableRandom} and not the random of this generator, so the
+	 * result is not reproducible by setting a seeded random.
+	 * 
+	 * @param count
+	 *            Number of names to generate.
+	 * @return The generated names.
+	 */
+	public String[] getNames(int count) {
+		return parallelNames(count).toArray(String[]::new);
+	}
+
+	/**
+	 * Returns a sequential stream of names which are generated lazily with the
+	 * random of this generator.
+	 * 
+	 * @param count
+	 *            Number of names in the stream.
+	 * @return The stream of names.
+	 */
+	public Stream<String> names(long count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative.");
+		}
+		return Stream.generate(this::getName).limit(count);
+	}
+
+	/**
+	 * Returns the names with the indices from the start to the end of the
+	 * sequence of a seed. Every name only depends on the model, the seed and
+	 * its index, so the stream can be made parallel and different workers can
+	 * generate disjoint ranges of the same sequence. The random of this
+	 * generator is not used. Excluded names are not rejected, as that would
+	 * shift the indices of the following names.
+	 * 
+	 * @param seed
+	 *            The seed of the sequence.
+	 * @param fromIndex
+	 *            Index of the first name, inclusive.
+	 * @param toIndex
+	 *            Index of the last name, exclusive.
+	 * @return The stream of names.
+	 * @see RuntimeModel#apply(long, long)
+	 */
+	public Stream<String> names(long seed, long fromIndex, long toIndex) {
+		if (fromIndex < 0 || toIndex < fromIndex) {
+			throw new IllegalArgumentException("Indices must satisfy 0 <= fromIndex <= toIndex.");
+		}
+		final RuntimeModel<?> model = models.get();
+		return LongStream.range(fromIndex, toIndex).mapToObj(index -> model.apply(seed, index));
+	}
+
+	/**
+	 * Returns a parallel stream of names. Whenever the stream is split to be
+	 * processed by another core, the split off part gets its own
+	 * {@link SplittableRandom}, so the cores do not share any random state.
+	 * The whole stream generates from the model which is current when it is
+	 * created.
+	 * 
+	 * @param count
+	 *            Number of names in the stream.
+	 * @return The parallel stream of names.
+	 */
+	@SuppressWarnings("unchecked")
+	public Stream<String> parallelNames(long count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative.");
+		}
+		return StreamSupport.stream(new NameSpliterator(models.get(), excluded, new SplittableRandom(), 0, count),
+				true);
 	}
 }
@@ -9,14 +9,26 @@ import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import de.tfelix.namegen.model.BinaryModelFormat;
+import de.tfelix.namegen.model.ModelInterpolation;
+import de.tfelix.namegen.model.Pruning;
+import de.tfelix.namegen.model.RuntimeModel;
+import de.tfelix.namegen.model.ScoredName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.NumberFormat;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * Commandline interface.
@@ -32,6 +44,18 @@ public class NameGenCli {
 	private final static String ORDER_ARG = "order";
 	private final static String MODE_ARG = "mode";
 	private final static String LOCALE_ARG = "locale";
+	private final static String THREADS_ARG = "threads";
+	private final static String FORMAT_ARG = "format";
+	private final static String MIN_COUNT_ARG = "min-count";
+	private final static String MAX_CONTEXTS_ARG = "max-contexts";
+	private final static String ENTROPY_THRESHOLD_ARG = "entropy-threshold";
+	private final static String PRECISION_ARG = "precision";
+	private final static String PORT_ARG = "port";
+	private final static String INDEX_ARG = "index";
+	private final static String WEIGHTS_ARG = "weights";
+	private final static int DEFAULT_PORT = 8080;
+	private final static double UNIQUE_FALSE_POSITIVE_RATE = 0.001;
+	private final static int UNIQUE_MAX_ATTEMPTS = 1000;
 
 	public static void main(String[] args) {
 		LOG.info("NameGen CLI interface");
@@ -48,48 +72,193 @@ public class NameGenCli {
 			final ULocale icuLocale = new ULocale(locale);
 			int count = 5;  // Default
 			if (line.hasOption("n")) {
-				count = NUMBER_FORMAT.parse(line.getOptionValue("n")).intValue();
+				count = number("count", line.getOptionValue("n")).intValue();
+				if (count < 0) {
+					LOG.error("The number of names must not be negative.");
+					System.exit(1);
+				}
 			}
 			if(mode.equalsIgnoreCase("build")) {
 				int order = DEFAULT_ORDER;
 				if (line.hasOption(ORDER_ARG)) {
-					order = NUMBER_FORMAT.parse(line.getOptionValue(ORDER_ARG)).intValue();
+					order = number(ORDER_ARG, line.getOptionValue(ORDER_ARG)).intValue();
 				}
 				UnicodeSet alphabet = LocaleData.getExemplarSet(icuLocale, LocaleData.ES_STANDARD);
 				float prior = 1f/(30f*alphabet.size());  // ~1/30 chance that generated letters will be unseen
 				final NameGenGenerator gen = new NameGenGenerator(order, prior, 0.02f, icuLocale);
-				gen.analyze(inputFile);
+				int threads = 1;
+				if (line.hasOption(THREADS_ARG)) {
+					threads = number(THREADS_ARG, line.getOptionValue(THREADS_ARG)).intValue();
+				}
+				if (line.hasOption(INDEX_ARG)) {
+					gen.setNameIndex(true);
+				}
+				gen.analyze(inputFile, threads);
+				int minCount = 1;
+				if (line.hasOption(MIN_COUNT_ARG)) {
+					minCount = number(MIN_COUNT_ARG, line.getOptionValue(MIN_COUNT_ARG)).intValue();
+				}
+				int maxContexts = Integer.MAX_VALUE;
+				if (line.hasOption(MAX_CONTEXTS_ARG)) {
+					maxContexts = number(MAX_CONTEXTS_ARG, line.getOptionValue(MAX_CONTEXTS_ARG)).intValue();
+				}
+				double entropyThreshold = 0;
+				if (line.hasOption(ENTROPY_THRESHOLD_ARG)) {
+					// NumberFormat does not understand the scientific notation small thresholds are written in.
+					entropyThreshold = decimal(ENTROPY_THRESHOLD_ARG, line.getOptionValue(ENTROPY_THRESHOLD_ARG));
+				}
+				gen.setPruning(new Pruning(minCount, maxContexts, entropyThreshold));
+				if (line.hasOption(PRECISION_ARG)) {
+					gen.setPrecision(number(PRECISION_ARG, line.getOptionValue(PRECISION_ARG)).intValue());
+				}
+				LOG.info(gen.report().toString());
 				try {
-					gen.writeModel(outputFile);
+					if (line.getOptionValue(FORMAT_ARG, "json").equalsIgnoreCase("binary")) {
+						gen.writeBinaryModel(outputFile);
+					} else {
+						gen.writeModel(outputFile);
+					}
+					if (line.hasOption(INDEX_ARG)) {
+						gen.writeNameIndex(line.getOptionValue(INDEX_ARG));
+					}
 				} catch(IOException e) {
 					LOG.error("Could not write output file.", e);
 					System.exit(1);
 				}
 
-				LOG.info("Trainable model was written.");
+				try {
+					LOG.info("Trainable model was written with {} bytes.", Files.size(Paths.get(outputFile)));
+				} catch (IOException e) {
+					LOG.info("Trainable model was written.");
+				}
 			} else if (mode.equalsIgnoreCase("generate")) {
 				final NameGen gen = new NameGen(inputFile);
-				Set<String> generatedNames = new HashSet<>(count);
-				for(int i = 0; i < count; ++i) {
-					String randomName = gen.getName();
-					if(generatedNames.contains(randomName)) {
-						i-= 1;
-					} else {
-						generatedNames.add(randomName);
+				if (line.hasOption(INDEX_ARG)) {
+					try {
+						gen.setExcluded(NameIndex.read(line.getOptionValue(INDEX_ARG)));
+					} catch (IOException e) {
+						LOG.error("Could not read the name index.", e);
+						System.exit(1);
+					}
+				}
+				// The filter of the unique names needs room for at least one name, even if none is requested.
+				final UniqueNameGen uniqueGen = new UniqueNameGen(gen, Math.max(count, 1), UNIQUE_FALSE_POSITIVE_RATE,
+						UNIQUE_MAX_ATTEMPTS);
+				List<String> generatedNames = new ArrayList<>(count);
+				try {
+					for (int i = 0; i < count; ++i) {
+						generatedNames.add(uniqueGen.next());
 					}
+				} catch (NoSuchElementException e) {
+					LOG.warn("The model could only generate {} distinct names.", generatedNames.size());
 				}
 				LOG.info(generatedNames.toString());
+			} else if (mode.equalsIgnoreCase("top")) {
+				final RuntimeModel<?> model;
+				try {
+					model = NameGen.load(Paths.get(inputFile));
+				} catch (IOException e) {
+					LOG.error("Could not read the model.", e);
+					System.exit(1);
+					return;
+				}
+				final long start = System.nanoTime();
+				final List<ScoredName> names = model.mostProbable(count);
+				LOG.info("Found the {} most probable names in {} ms.", names.size(),
+						(System.nanoTime() - start) / 1000000);
+				LOG.info(names.toString());
+			} else if (mode.equalsIgnoreCase("mix")) {
+				final String[] files = inputFile.split(",");
+				final String[] weights = line.getOptionValue(WEIGHTS_ARG, "").split(",");
+				if (weights.length != files.length) {
+					LOG.error("Every model needs a weight.");
+					System.exit(1);
+				}
+				final ModelInterpolation interpolation = new ModelInterpolation();
+				try {
+					for (int i = 0; i < files.length; i++) {
+						interpolation.add(NameGen.load(Paths.get(files[i].trim())),
+								number(WEIGHTS_ARG, weights[i].trim()).doubleValue());
+					}
+					final RuntimeModel<?> model = interpolation.build();
+					if (line.getOptionValue(FORMAT_ARG, "json").equalsIgnoreCase("binary")) {
+						BinaryModelFormat.write(model, Paths.get(outputFile));
+					} else {
+						NameGenGenerator.writeModel(model, outputFile);
+					}
+					LOG.info("Blended model was written with {} bytes.", Files.size(Paths.get(outputFile)));
+				} catch (IOException e) {
+					LOG.error("Could not blend the models.", e);
+					System.exit(1);
+				}
+			} else if (mode.equalsIgnoreCase("serve")) {
+				int port = DEFAULT_PORT;
+				if (line.hasOption(PORT_ARG)) {
+					port = number(PORT_ARG, line.getOptionValue(PORT_ARG)).intValue();
+				}
+				// Every model is served with the name of its file as id.
+				final Map<String, Path> files = new LinkedHashMap<>();
+				for (String file : inputFile.split(",")) {
+					final Path path = Paths.get(file.trim());
+					final String name = path.getFileName().toString();
+					final int extension = name.lastIndexOf('.');
+					files.put(extension > 0 ? name.substring(0, extension) : name, path);
+				}
+				try {
+					final NameGenServer server = new NameGenServer(files, Long.MAX_VALUE, new InetSocketAddress(port));
+					server.getMetrics().register("serve");
+					server.start();
+					Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+				} catch (IOException | IllegalArgumentException | ModelLoadException e) {
+					LOG.error("Could not start the server.", e);
+					System.exit(1);
+				}
 			} else {
 				LOG.info("It was unclear which desired mode should be used for execution.");
 			}
 			
 		} catch (ParseException ex) {
 			LOG.error("Error while parsing parameter.", ex);
+			System.exit(1);
 		} catch (java.text.ParseException ei) {
-			LOG.error("Error parsing n (number of desired words).", ei);
+			LOG.error(ei.getMessage());
+			System.exit(1);
 		}
 	}
 
+	/**
+	 * Parses the number of an option.
+	 *
+	 * @throws java.text.ParseException
+	 *             naming the option if the value is not a number.
+	 */
+	private static Number number(String option, String value) throws java.text.ParseException {
+		try {
+			return NUMBER_FORMAT.parse(value);
+		} catch (java.text.ParseException e) {
+			throw invalidNumber(option, value);
+		}
+	}
+
+	/**
+	 * Parses a decimal number of an option, which may use the scientific
+	 * notation.
+	 *
+	 * @throws java.text.ParseException
+	 *             naming the option if the value is not a number.
+	 */
+	private static double decimal(String option, String value) throws java.text.ParseException {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw invalidNumber(option, value);
+		}
+	}
+
+	private static java.text.ParseException invalidNumber(String option, String value) {
+		return new java.text.ParseException(String.format("--%s must be a number, but is %s.", option, value), 0);
+	}
+
 	private static Options setupCli() {
 		final Options opts = new Options();
 
@@ -108,7 +277,8 @@ public class NameGenCli {
 				.longOpt("input")
 				.hasArg()
 				.required()
-				.desc("Gives the path to the input file of the names to be learned.")
+				.desc("Gives the path to the input file of the names to be learned. The mix and serve modes take a "
+						+ "comma separated list of model files.")
 				.build();
 		opts.addOption(opt);
 
@@ -117,7 +287,7 @@ public class NameGenCli {
 				.longOpt("mode")
 				.hasArg(true)
 				.required(true)
-				.desc("Specify the running mode.")
+				.desc("Specify the running mode: build, generate, top, mix or serve.")
 				.build();
 		opts.addOption(mode_option);
 
@@ -151,6 +321,94 @@ public class NameGenCli {
 				.build();
 		opts.addOption(locale);
 
+		Option threads_option = Option.builder(THREADS_ARG)
+				.argName("threads")
+				.longOpt("threads")
+				.hasArg()
+				.required(false)
+				.desc("Number of threads to train the model with. Default is 1.")
+				.type(Integer.TYPE)
+				.build();
+		opts.addOption(threads_option);
+
+		Option format_option = Option.builder(FORMAT_ARG)
+				.argName("format")
+				.longOpt("format")
+				.hasArg()
+				.required(false)
+				.desc("Format of the written model, either json or binary. Default is json.")
+				.build();
+		opts.addOption(format_option);
+
+		Option min_count_option = Option.builder()
+				.argName("count")
+				.longOpt(MIN_COUNT_ARG)
+				.hasArg()
+				.required(false)
+				.desc("Removes contexts longer than one letter which were seen less often. Default is 1.")
+				.type(Integer.TYPE)
+				.build();
+		opts.addOption(min_count_option);
+
+		Option max_contexts_option = Option.builder()
+				.argName("count")
+				.longOpt(MAX_CONTEXTS_ARG)
+				.hasArg()
+				.required(false)
+				.desc("Maximum number of contexts of every length. Default is unlimited.")
+				.type(Integer.TYPE)
+				.build();
+		opts.addOption(max_contexts_option);
+
+		Option entropy_option = Option.builder()
+				.argName("bits")
+				.longOpt(ENTROPY_THRESHOLD_ARG)
+				.hasArg()
+				.required(false)
+				.desc("Removes contexts which change the predictions by less than this weighted relative entropy, "
+						+ "e.g. 1e-6. Default is 0.")
+				.build();
+		opts.addOption(entropy_option);
+
+		Option precision_option = Option.builder(PRECISION_ARG)
+				.argName("bits")
+				.longOpt(PRECISION_ARG)
+				.hasArg()
+				.required(false)
+				.desc("Bits of the stored probabilities, 8, 16 or 32. Default is 32.")
+				.type(Integer.TYPE)
+				.build();
+		opts.addOption(precision_option);
+
+		Option port_option = Option.builder(PORT_ARG)
+				.argName("port")
+				.longOpt(PORT_ARG)
+				.hasArg()
+				.required(false)
+				.desc(String.format("Port the serve mode listens on. Default is %d.", DEFAULT_PORT))
+				.type(Integer.TYPE)
+				.build();
+		opts.addOption(port_option);
+
+		Option weights_option = Option.builder()
+				.argName("weights")
+				.longOpt(WEIGHTS_ARG)
+				.hasArg()
+				.required(false)
+				.desc("Comma separated weights of the models the mix mode blends, e.g. 0.7,0.3.")
+				.build();
+		opts.addOption(weights_option);
+
+		Option index_option = Option.builder()
+				.argName("indexFile")
+				.longOpt(INDEX_ARG)
+				.hasArg()
+				.required(false)
+				.desc("Index of the training names. The build mode writes it, the generate mode does not return "
+						+ "the names in it.")
+				.build();
+		opts.addOption(index_option);
+
 		return opts;
 	}
 
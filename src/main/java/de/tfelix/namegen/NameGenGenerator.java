@@ -2,8 +2,19 @@ package de.tfelix.namegen;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -12,7 +23,11 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.BinaryModelFormat;
 import de.tfelix.namegen.model.MarkovModel;
+import de.tfelix.namegen.model.Metrics;
+import de.tfelix.namegen.model.Pruning;
+import de.tfelix.namegen.model.PruningReport;
 import de.tfelix.namegen.model.RuntimeModel;
 import de.tfelix.namegen.model.TrainableModel;
 import org.slf4j.Logger;
@@ -23,7 +38,9 @@ import org.slf4j.LoggerFactory;
  * of new-line-terminated names. It will initialize a serialized file which can
  * be loaded by the name generator later and used to generate the names.
  * <p>
- * The file to be analyzed must contain a newline terminated list of names.
+ * The file to be analyzed must contain a newline terminated list of UTF-8
+ * encoded names. It might be gzip compressed. Names can also be fed from an
+ * InputStream or a Stream.
  * </p>
  *
  * @author Thomas Felix
@@ -33,7 +50,10 @@ public class NameGenGenerator {
     private final static Logger LOG = LoggerFactory.getLogger(NameGenGenerator.class);
 
     private final TrainableModel trainableModel;
-
+    private Pruning pruning = Pruning.NONE;
+    private int precision = 32;
+    private Metrics metrics;
+    private NameIndexBuilder names;
 
     /**
      * Ctor.
@@ -74,36 +94,325 @@ public class NameGenGenerator {
      * @param inFile The file to be read.
      */
     public void analyze(String inFile) {
+        analyze(inFile, 1);
+    }
+
+    /**
+     * Reads the file and feeds it into the trainableModel using multiple threads. The file must contain newline
+     * terminated names. Every worker thread counts its share of the names into its own partial model and the
+     * partial models are merged into the trainableModel at the end.
+     *
+     * @param inFile      The file to be read.
+     * @param parallelism Number of threads to train with. 1 trains on the calling thread.
+     */
+    public void analyze(String inFile, int parallelism) {
         if (inFile == null || inFile.isEmpty()) {
             throw new IllegalArgumentException("inFile can not be null or empty.");
         }
+        analyzeFile(Paths.get(inFile), parallelism);
+    }
+
+    /**
+     * Reads the file and feeds it into the trainableModel. The file must contain newline
+     * terminated names.
+     *
+     * @param inFile The file to be read.
+     * @see #analyzeFile(Path, int)
+     */
+    public void analyzeFile(Path inFile) {
+        analyzeFile(inFile, 1);
+    }
+
+    /**
+     * Reads the file and feeds it into the trainableModel using multiple threads. The file must contain UTF-8
+     * encoded, newline terminated names and might be gzip compressed. Uncompressed files are memory mapped and
+     * decoded straight into the model, split into one region per thread. Every worker thread counts its share of
+     * the names into its own partial model and the partial models are merged into the trainableModel at the end.
+     *
+     * @param inFile      The file to be read.
+     * @param parallelism Number of threads to train with. 1 trains on the calling thread.
+     */
+    public void analyzeFile(Path inFile, int parallelism) {
+        if (inFile == null) {
+            throw new IllegalArgumentException("inFile can not be null.");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
 
         final long startTime = System.currentTimeMillis();
-        final File inF = new File(inFile);
+        final long startNanos = System.nanoTime();
 
         // Validate the input files.
-        if (!inF.exists() || !inF.canRead()) {
+        if (!Files.isRegularFile(inFile) || !Files.isReadable(inFile)) {
             throw new IllegalArgumentException("Can not find or read input file.");
         }
 
         try {
-            try (BufferedReader br = new BufferedReader(new FileReader(inFile))) {
-                String line = "";
-                while ((line = br.readLine()) != null) {
-                    line = line.trim().toLowerCase();
-                    // Generate our hash counts.
-                    trainableModel.update(line);
+            if (CorpusReader.isGzip(inFile)) {
+                try (InputStream in = Files.newInputStream(inFile)) {
+                    final Reader reader = CorpusReader.open(in);
+                    if (parallelism == 1) {
+                        final LineBuffer lines = new LineBuffer(learner(trainableModel, this.names));
+                        CorpusReader.read(reader, lines);
+                        recordTraining(lines.nameCount(), lines.charCount(), startNanos);
+                    } else {
+                        // Decompression can not be split, so only the counting runs in parallel.
+                        // The names are recorded by analyzeNames.
+                        final BufferedReader lines = new BufferedReader(reader);
+                        runInPool(parallelism, () -> {
+                            analyzeNames(lines.lines().parallel());
+                            return null;
+                        });
+                    }
+                }
+            } else {
+                final List<long[]> regions = CorpusReader.split(inFile, parallelism);
+                if (parallelism == 1) {
+                    final LineBuffer lines = new LineBuffer(learner(trainableModel, this.names));
+                    for (long[] region : regions) {
+                        CorpusReader.read(inFile, region[0], region[1], lines);
+                    }
+                    recordTraining(lines.nameCount(), lines.charCount(), startNanos);
+                } else {
+                    final Partial merged = runInPool(parallelism, () -> regions.parallelStream()
+                            .map(region -> {
+                                final Partial partial = new Partial();
+                                try {
+                                    CorpusReader.read(inFile, region[0], region[1], partial.lines);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                                return partial;
+                            })
+                            .reduce(Partial::merge)
+                            .orElseGet(Partial::new));
+                    mergePartial(merged);
+                    recordTraining(merged.names(), merged.chars(), startNanos);
                 }
             }
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             LOG.error("Could not open inFile", e);
         }
 
-        LOG.info("File {} analyzed in {} ms.", inF.getName(), System.currentTimeMillis() - startTime);
+        LOG.info("File {} analyzed in {} ms.", inFile.getFileName(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Reads the UTF-8 encoded, newline terminated names of the stream and feeds them into the trainableModel. Gzip
+     * compressed input is decompressed. The stream is not closed.
+     *
+     * @param in The stream to be read.
+     * @throws IOException if reading the stream fails.
+     */
+    public void analyzeStream(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("in can not be null.");
+        }
+        final long startNanos = System.nanoTime();
+        final LineBuffer lines = new LineBuffer(learner(trainableModel, this.names));
+        CorpusReader.read(CorpusReader.open(in), lines);
+        recordTraining(lines.nameCount(), lines.charCount(), startNanos);
+    }
+
+    /**
+     * Feeds the names into the trainableModel. If the stream is parallel, its worker threads count into partial
+     * models which are merged into the trainableModel at the end.
+     *
+     * @param names The names to be learned, one per element.
+     */
+    public void analyzeNames(Stream<? extends CharSequence> names) {
+        if (names == null) {
+            throw new IllegalArgumentException("names can not be null.");
+        }
+        final long startNanos = System.nanoTime();
+        if (names.isParallel()) {
+            final Partial merged = names.collect(Partial::new, Partial::accept, Partial::merge);
+            mergePartial(merged);
+            recordTraining(merged.names(), merged.chars(), startNanos);
+        } else {
+            final LineBuffer lines = new LineBuffer(learner(trainableModel, this.names));
+            names.forEach(lines::line);
+            recordTraining(lines.nameCount(), lines.charCount(), startNanos);
+        }
+    }
+
+    /**
+     * Returns the consumer which learns a name and collects it for the name index if one is built.
+     */
+    private static Consumer<CharSequence> learner(TrainableModel model, NameIndexBuilder names) {
+        if (names == null) {
+            return model::update;
+        }
+        return name -> {
+            model.update(name);
+            names.add(name);
+        };
+    }
+
+    private void mergePartial(Partial merged) {
+        trainableModel.merge(merged.model);
+        if (merged.index != null) {
+            names.addAll(merged.index);
+        }
+    }
+
+    private void recordTraining(long names, long chars, long startNanos) {
+        final Metrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordTraining(names, chars, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Runs the task in a pool of the given size. A parallel stream started
+     * inside the pool uses its threads.
+     */
+    private static <T> T runInPool(int parallelism, Callable<T> task) {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training was interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw new IllegalStateException("Training failed.", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Partial model of a single worker thread together with the buffer its lines are read into.
+     */
+    private final class Partial {
+        private final TrainableModel model = trainableModel.createEmpty();
+        private final NameIndexBuilder index = names != null ? new NameIndexBuilder() : null;
+        private final LineBuffer lines = new LineBuffer(learner(model, index));
+        private long mergedNames;
+        private long mergedChars;
+
+        private void accept(CharSequence name) {
+            lines.line(name);
+        }
+
+        private Partial merge(Partial other) {
+            model.merge(other.model);
+            if (index != null) {
+                index.addAll(other.index);
+            }
+            mergedNames += other.names();
+            mergedChars += other.chars();
+            return this;
+        }
+
+        private long names() {
+            return lines.nameCount() + mergedNames;
+        }
+
+        private long chars() {
+            return lines.charCount() + mergedChars;
+        }
+    }
+
+    /**
+     * Sets the metrics the analyzed names and the training time are recorded
+     * in. By default nothing is recorded.
+     *
+     * @param metrics The metrics to record in, null to stop recording.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets whether the analyzed names are collected for a {@link NameIndex}, which a {@link NameGen} uses to reject
+     * generated names that copy a training name. Only names which are analyzed afterwards are collected. The names
+     * are kept in a single character array until the index is built.
+     *
+     * @param collect True to collect the names.
+     */
+    public void setNameIndex(boolean collect) {
+        if (!collect) {
+            this.names = null;
+        } else if (this.names == null) {
+            this.names = new NameIndexBuilder();
+        }
+    }
+
+    /**
+     * Builds the minimal automaton of the analyzed names.
+     *
+     * @return The index of the distinct analyzed names.
+     * @see #setNameIndex(boolean)
+     */
+    public NameIndex buildNameIndex() {
+        if (names == null) {
+            throw new IllegalStateException("The names were not collected, enable the name index before analyzing.");
+        }
+        final long start = System.currentTimeMillis();
+        final NameIndex index = names.build();
+        LOG.info("Name index of {} names built with {} states and {} edges in {} ms.", index.size(),
+                index.stateCount(), index.edgeCount(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    /**
+     * Writes the index of the analyzed names to a file, usually next to the model.
+     *
+     * @param outFile The file to write.
+     * @see #buildNameIndex()
+     */
+    public void writeNameIndex(String outFile) throws IOException {
+        if (outFile == null || outFile.isEmpty()) {
+            throw new IllegalArgumentException("outFile can not be null or empty.");
+        }
+        buildNameIndex().write(Paths.get(outFile));
+    }
+
+    /**
+     * Sets which contexts are kept when the model is written. By default all
+     * contexts are kept.
+     *
+     * @param pruning Decides which contexts are kept.
+     */
+    public void setPruning(Pruning pruning) {
+        if (pruning == null) {
+            throw new IllegalArgumentException("pruning can not be null.");
+        }
+        this.pruning = pruning;
+    }
+
+    /**
+     * Sets the number of bits the probabilities of the written model are
+     * stored with. Fewer bits make the model smaller, but very rare
+     * characters might not be generated anymore.
+     *
+     * @param bits 8, 16 or 32 for full float precision, which is the default.
+     */
+    public void setPrecision(int bits) {
+        if (bits != 8 && bits != 16 && bits != 32) {
+            throw new IllegalArgumentException("Precision must be 8, 16 or 32 bits.");
+        }
+        this.precision = bits;
+    }
+
+    /**
+     * Describes how much the pruning shrinks the model and how much worse it predicts the analyzed names.
+     *
+     * @return The report.
+     */
+    public PruningReport report() {
+        return this.trainableModel.report(pruning);
     }
 
     RuntimeModel build() {
-        return this.trainableModel.build();
+        final RuntimeModel model = this.trainableModel.build(pruning);
+        return precision < 32 ? model.quantize(precision) : model;
     }
 
     /**
@@ -116,13 +425,22 @@ public class NameGenGenerator {
             throw new IllegalArgumentException("outFile can not be null or empty.");
         }
 
+        writeModel(build(), outFile);
+    }
+
+    /**
+     * Writes a runtime model as JSON to a file, e.g. a model blended from several trained ones.
+     *
+     * @param generator The model to write.
+     * @param outFile   The file to write.
+     */
+    static void writeModel(RuntimeModel<?> generator, String outFile) throws IOException {
         final File outF = new File(outFile);
 
         // Try to create out file.
         if (!outF.exists()) {
             outF.createNewFile();
         }
-        RuntimeModel generator = this.trainableModel.build();
         ObjectMapper objectMapper = new ObjectMapper()
                 .registerModule(new ParameterNamesModule())
                 .registerModule(new Jdk8Module());
@@ -130,4 +448,19 @@ public class NameGenGenerator {
         objectMapper.writeValue(outF, generator);
     }
 
+    /**
+     * Writes the trainableModel in the binary model format to a file. Loading it is much faster than loading the
+     * JSON model, as the file is memory mapped and sampled from directly.
+     *
+     * @param outFile The file to write.
+     * @see BinaryModelFormat
+     */
+    public void writeBinaryModel(String outFile) throws IOException {
+        if (outFile == null || outFile.isEmpty()) {
+            throw new IllegalArgumentException("outFile can not be null or empty.");
+        }
+
+        BinaryModelFormat.write(build(), Paths.get(outFile));
+    }
+
 }
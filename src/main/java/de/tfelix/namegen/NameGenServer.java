@@ -0,0 +1,367 @@
+package de.tfelix.namegen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.tfelix.namegen.model.Metrics;
+import de.tfelix.namegen.model.NameConstraints;
+import de.tfelix.namegen.model.RuntimeModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves names of one or more models over HTTP with the server built into the
+ * JDK. Every request is handled on its own virtual thread if the JVM supports
+ * them, otherwise on a cached thread pool. Connections are kept alive between
+ * requests.
+ * <p>
+ * The server answers with JSON:
+ * </p>
+ * <ul>
+ * <li><code>GET /models</code> lists the ids of the models.</li>
+ * <li><code>GET /names?model=id&amp;count=n</code> generates a batch of names.
+ * The optional parameters <code>min</code>, <code>max</code>,
+ * <code>prefix</code> and <code>suffix</code> constrain the names.</li>
+ * <li><code>POST /names</code> takes an array of objects with the same
+ * properties as the parameters and answers with one batch of names for each of
+ * them, so many batches only need a single round trip.</li>
+ * <li><code>GET /metrics</code> returns the metrics of all models.</li>
+ * </ul>
+ * <p>
+ * Invalid parameters are answered with status 400 and models which can not be
+ * loaded with 503.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public class NameGenServer {
+
+	private final static Logger logger = LoggerFactory.getLogger(NameGenServer.class);
+
+	/**
+	 * Maximal number of names of a single request, including all batches of
+	 * a POST.
+	 */
+	public final static int MAX_COUNT = 10000;
+	/**
+	 * Maximal length of the names of a request, a bigger <code>max</code> is
+	 * rejected.
+	 */
+	public final static int MAX_LENGTH = 256;
+	private final static int DEFAULT_MAX_LENGTH = 32;
+
+	private final Map<String, Path> files;
+	private final ModelRegistry models;
+	private final Metrics metrics = new Metrics();
+	private final ObjectMapper json = new ObjectMapper();
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Creates the server, it accepts connections once it is started.
+	 *
+	 * @param files
+	 *            Maps the ids of the served models to their JSON or binary
+	 *            model files.
+	 * @param maxBytes
+	 *            Maximal total size of the loaded models.
+	 * @param address
+	 *            Address to listen on. Port 0 picks a free port.
+	 * @throws IOException
+	 *             if the address can not be bound.
+	 */
+	public NameGenServer(Map<String, Path> files, long maxBytes, InetSocketAddress address) throws IOException {
+		if (files == null || files.isEmpty()) {
+			throw new IllegalArgumentException("files can not be null or empty.");
+		}
+		this.files = new LinkedHashMap<>(files);
+		this.models = new ModelRegistry(id -> {
+			final RuntimeModel<?> model = NameGen.load(this.files.get(id));
+			model.setMetrics(metrics);
+			return model;
+		}, maxBytes);
+		this.server = HttpServer.create(address, 0);
+		this.executor = newExecutor();
+		server.setExecutor(executor);
+		server.createContext("/models", exchange -> handle(exchange, this::listModels));
+		server.createContext("/names", exchange -> handle(exchange, this::generate));
+		server.createContext("/metrics", exchange -> handle(exchange, e -> metrics));
+	}
+
+	/**
+	 * Loads all models and starts accepting connections.
+	 *
+	 * @throws ModelLoadException
+	 *             if a model can not be loaded.
+	 */
+	public void start() {
+		for (String id : files.keySet()) {
+			models.get(id);
+		}
+		server.start();
+		logger.info("Serving {} models on {}.", files.size(), getAddress());
+	}
+
+	/**
+	 * Stops accepting connections and waits for the running requests.
+	 *
+	 * @param delay
+	 *            Maximal time to wait for running requests, in seconds.
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+	}
+
+	/**
+	 * @return The address the server listens on.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * @return The metrics of all served models.
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Creates an executor which runs every task on a new virtual thread. They
+	 * need Java 21, on older versions a cached thread pool is used instead.
+	 */
+	static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			logger.debug("Virtual threads are not available, using a thread pool.");
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private Object listModels(HttpExchange exchange) {
+		requireMethod(exchange, "GET");
+		return files.keySet();
+	}
+
+	private Object generate(HttpExchange exchange) throws IOException {
+		if (exchange.getRequestMethod().equals("POST")) {
+			final JsonNode batches = readBody(exchange);
+			if (!batches.isArray()) {
+				throw new IllegalArgumentException("The body must be an array of batches.");
+			}
+			final List<Batch> parsed = new ArrayList<>(batches.size());
+			long total = 0;
+			for (JsonNode batch : batches) {
+				final Batch next = new Batch(text(batch, "model", null), number(batch, "count", 1),
+						number(batch, "min", -1), number(batch, "max", -1), text(batch, "prefix", ""),
+						text(batch, "suffix", ""));
+				total += next.count;
+				parsed.add(next);
+			}
+			checkCount(total);
+			final List<List<String>> names = new ArrayList<>(parsed.size());
+			for (Batch batch : parsed) {
+				names.add(batch.generate());
+			}
+			return names;
+		}
+		requireMethod(exchange, "GET");
+		final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+		final Batch batch = new Batch(query.get("model"), parse(query, "count", 1), parse(query, "min", -1),
+				parse(query, "max", -1), query.getOrDefault("prefix", ""), query.getOrDefault("suffix", ""));
+		checkCount(batch.count);
+		return batch.generate();
+	}
+
+	/**
+	 * A batch of names of a single model.
+	 */
+	private final class Batch {
+
+		private final String model;
+		private final int count;
+		private final NameConstraints constraints;
+
+		private Batch(String model, int count, int min, int max, String prefix, String suffix) {
+			if (model == null) {
+				throw new IllegalArgumentException("model is missing.");
+			}
+			if (!files.containsKey(model)) {
+				throw new NotFoundException(String.format("Unknown model %s.", model));
+			}
+			if (count < 0) {
+				throw new IllegalArgumentException("count must not be negative.");
+			}
+			if (max > MAX_LENGTH) {
+				throw new IllegalArgumentException(String.format("max must not be bigger than %d.", MAX_LENGTH));
+			}
+			this.model = model;
+			this.count = count;
+			if (min < 0 && max < 0 && prefix.isEmpty() && suffix.isEmpty()) {
+				this.constraints = null;
+			} else {
+				this.constraints = new NameConstraints(Math.max(min, 0), max < 0 ? DEFAULT_MAX_LENGTH : max, prefix,
+						suffix);
+			}
+		}
+
+		private List<String> generate() {
+			final RuntimeModel<Random> runtime = models.get(model);
+			final Random random = ThreadLocalRandom.current();
+			final List<String> names = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				names.add(constraints == null ? runtime.apply(random) : runtime.apply(random, constraints));
+			}
+			return names;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Handler {
+		Object handle(HttpExchange exchange) throws IOException;
+	}
+
+	/**
+	 * Runs the handler and writes its result or the error as JSON. The
+	 * response always has a length, so the connection can be kept alive.
+	 */
+	private void handle(HttpExchange exchange, Handler handler) throws IOException {
+		int status = 200;
+		Object result;
+		try {
+			result = handler.handle(exchange);
+		} catch (NotFoundException e) {
+			status = 404;
+			result = error(e.getMessage());
+		} catch (MethodNotAllowedException e) {
+			status = 405;
+			result = error(e.getMessage());
+		} catch (ModelLoadException e) {
+			logger.error("Request {} failed.", exchange.getRequestURI(), e);
+			status = 503;
+			result = error(e.getMessage());
+		} catch (IllegalArgumentException e) {
+			status = 400;
+			result = error(e.getMessage());
+		} catch (RuntimeException e) {
+			logger.error("Request {} failed.", exchange.getRequestURI(), e);
+			status = 500;
+			result = error("Internal error.");
+		}
+		// Closing the exchange skips an unread request body, so the connection can be reused.
+		try (OutputStream out = exchange.getResponseBody()) {
+			final byte[] body = json.writeValueAsBytes(result);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			out.write(body);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private JsonNode readBody(HttpExchange exchange) throws IOException {
+		try {
+			return json.readTree(exchange.getRequestBody());
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("The body is not valid JSON.", e);
+		}
+	}
+
+	private static Map<String, String> error(String message) {
+		final Map<String, String> error = new HashMap<>();
+		error.put("error", message);
+		return error;
+	}
+
+	private static void requireMethod(HttpExchange exchange, String method) {
+		if (!exchange.getRequestMethod().equals(method)) {
+			throw new MethodNotAllowedException(String.format("Method %s is not allowed.",
+					exchange.getRequestMethod()));
+		}
+	}
+
+	private static void checkCount(long count) {
+		if (count > MAX_COUNT) {
+			throw new IllegalArgumentException(String.format("At most %d names can be requested at once.", MAX_COUNT));
+		}
+	}
+
+	private static Map<String, String> query(String rawQuery) throws UnsupportedEncodingException {
+		final Map<String, String> query = new HashMap<>();
+		if (rawQuery == null) {
+			return query;
+		}
+		for (String parameter : rawQuery.split("&")) {
+			final int separator = parameter.indexOf('=');
+			if (separator > 0) {
+				query.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+						URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+			}
+		}
+		return query;
+	}
+
+	private static int parse(Map<String, String> query, String name, int defaultValue) {
+		final String value = query.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("%s must be a number.", name));
+		}
+	}
+
+	private static String text(JsonNode node, String name, String defaultValue) {
+		final JsonNode value = node.get(name);
+		return value == null || value.isNull() ? defaultValue : value.asText();
+	}
+
+	private static int number(JsonNode node, String name, int defaultValue) {
+		final JsonNode value = node.get(name);
+		if (value == null || value.isNull()) {
+			return defaultValue;
+		}
+		if (!value.canConvertToInt()) {
+			throw new IllegalArgumentException(String.format("%s must be a number.", name));
+		}
+		return value.asInt();
+	}
+
+	private static final class NotFoundException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		private NotFoundException(String message) {
+			super(message);
+		}
+	}
+
+	private static final class MethodNotAllowedException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		private MethodNotAllowedException(String message) {
+			super(message);
+		}
+	}
+}
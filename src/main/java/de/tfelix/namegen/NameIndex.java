@@ -0,0 +1,256 @@
+package de.tfelix.namegen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Set of the names a model was trained on, so generated names which copy a
+ * training name can be rejected. The names are stored as a minimal acyclic
+ * automaton: names which share a prefix share its states and names which
+ * share a suffix share its states as well, so a corpus of millions of names
+ * needs a few bytes per name instead of a string object each. Looking up a
+ * name follows one edge per letter.
+ * <p>
+ * The automaton is stored in flat buffers: the first edge of every state,
+ * and the symbol and target state of every edge. The edges of a state are
+ * sorted by their symbol. The highest bit of a target marks that a name ends
+ * at the target. An index is built by {@link NameGenGenerator} from the
+ * analyzed names and memory mapped when it is read from a file.
+ * </p>
+ * <p>
+ * The file starts with the magic number "NGMI", the format version, the
+ * number of names, the number of states and edges and the root state,
+ * followed by the buffers. All values are little endian.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public final class NameIndex {
+
+	private static final int MAGIC = 'N' | 'G' << 8 | 'M' << 16 | 'I' << 24;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 28;
+	/**
+	 * Marks an edge whose target ends a name.
+	 */
+	static final int END = 0x80000000;
+
+	private final long names;
+	private final int root;
+	private final IntBuffer firstEdge;
+	private final CharBuffer edgeSymbol;
+	private final IntBuffer edgeTarget;
+
+	NameIndex(long names, int root, IntBuffer firstEdge, CharBuffer edgeSymbol, IntBuffer edgeTarget) {
+		this.names = names;
+		this.root = root;
+		this.firstEdge = firstEdge;
+		this.edgeSymbol = edgeSymbol;
+		this.edgeTarget = edgeTarget;
+	}
+
+	/**
+	 * Checks if the name is one of the indexed names. The training names are
+	 * lower cased, so the name is compared ignoring its case.
+	 *
+	 * @param name
+	 *            The name to look up.
+	 * @return True if the name is in the index.
+	 */
+	public boolean contains(CharSequence name) {
+		int state = root;
+		int target = 0;
+		int i = 0;
+		while (i < name.length()) {
+			final int codePoint = Character.codePointAt(name, i);
+			final int count = Character.charCount(codePoint);
+			final int lower = lowerCase(codePoint);
+			for (int j = 0; j < count; j++) {
+				final char symbol = count == 1 ? (char) lower
+						: j == 0 ? Character.highSurrogate(lower) : Character.lowSurrogate(lower);
+				final int edge = edge(state, symbol);
+				if (edge < 0) {
+					return false;
+				}
+				target = edgeTarget.get(edge);
+				state = target & ~END;
+			}
+			i += count;
+		}
+		return (target & END) != 0;
+	}
+
+	/**
+	 * Lower cases the code point like the training names are, keeping it if
+	 * its lower case needs a different number of characters.
+	 */
+	static int lowerCase(int codePoint) {
+		final int lower = Character.toLowerCase(codePoint);
+		return Character.charCount(lower) == Character.charCount(codePoint) ? lower : codePoint;
+	}
+
+	/**
+	 * @return The edge of the state with the symbol or -1 if it has none.
+	 */
+	private int edge(int state, char symbol) {
+		int low = firstEdge.get(state);
+		int high = firstEdge.get(state + 1) - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final char midSymbol = edgeSymbol.get(mid);
+			if (midSymbol < symbol) {
+				low = mid + 1;
+			} else if (midSymbol > symbol) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Number of distinct names in the index.
+	 */
+	public long size() {
+		return names;
+	}
+
+	/**
+	 * @return Number of states of the automaton.
+	 */
+	public int stateCount() {
+		return firstEdge.limit() - 1;
+	}
+
+	/**
+	 * @return Number of edges of the automaton.
+	 */
+	public int edgeCount() {
+		return edgeSymbol.limit();
+	}
+
+	/**
+	 * @return Size of the index file in bytes, which is also about the memory
+	 *         the index needs.
+	 */
+	public long byteSize() {
+		final long edges = edgeCount();
+		final long size = HEADER_SIZE + 4L * (stateCount() + 1) + 6 * edges;
+		return size + (4 - size % 4) % 4;
+	}
+
+	/**
+	 * Writes the index to the file. An existing file is overwritten.
+	 *
+	 * @param path
+	 *            The file to write to.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	public void write(Path path) throws IOException {
+		final long size = byteSize();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("The name index is too big for a single file.");
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putLong(names);
+			out.putInt(stateCount());
+			out.putInt(edgeCount());
+			out.putInt(root);
+			for (int i = 0; i < firstEdge.limit(); i++) {
+				out.putInt(firstEdge.get(i));
+			}
+			for (int i = 0; i < edgeTarget.limit(); i++) {
+				out.putInt(edgeTarget.get(i));
+			}
+			for (int i = 0; i < edgeSymbol.limit(); i++) {
+				out.putChar(edgeSymbol.get(i));
+			}
+			out.force();
+		}
+	}
+
+	/**
+	 * Memory maps the index file.
+	 *
+	 * @param nameFile
+	 *            The index file.
+	 * @return The index backed by the file.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 * @throws IllegalArgumentException
+	 *             if the file is not a valid index file.
+	 */
+	public static NameIndex read(String nameFile) throws IOException {
+		if (nameFile == null || nameFile.isEmpty()) {
+			throw new IllegalArgumentException("nameFile can not be null or empty.");
+		}
+		return read(Paths.get(nameFile));
+	}
+
+	/**
+	 * Memory maps the index file.
+	 *
+	 * @param path
+	 *            The index file.
+	 * @return The index backed by the file.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 * @throws IllegalArgumentException
+	 *             if the file is not a valid index file.
+	 */
+	public static NameIndex read(Path path) throws IOException {
+		if (!Files.isRegularFile(path)) {
+			throw new IllegalArgumentException("Can not find the name index file.");
+		}
+		final MappedByteBuffer in;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("The name index file is too big.");
+			}
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		in.order(ByteOrder.LITTLE_ENDIAN);
+		if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+			throw new IllegalArgumentException("The file is not a name index file.");
+		}
+		final int version = in.getInt();
+		if (version != VERSION) {
+			throw new IllegalArgumentException(String.format("Unsupported name index version %d.", version));
+		}
+		final long names = in.getLong();
+		final int stateCount = in.getInt();
+		final int edgeCount = in.getInt();
+		final int root = in.getInt();
+		if (names < 0 || stateCount < 1 || edgeCount < 0 || root < 0 || root >= stateCount
+				|| in.remaining() < 4L * (stateCount + 1) + 6L * edgeCount) {
+			throw new IllegalArgumentException("The name index file is corrupt.");
+		}
+		final IntBuffer firstEdge = slice(in, stateCount + 1, 4).asIntBuffer();
+		final IntBuffer edgeTarget = slice(in, edgeCount, 4).asIntBuffer();
+		final CharBuffer edgeSymbol = slice(in, edgeCount, 2).asCharBuffer();
+		return new NameIndex(names, root, firstEdge, edgeSymbol, edgeTarget);
+	}
+
+	private static ByteBuffer slice(ByteBuffer in, int count, int size) {
+		final ByteBuffer slice = in.slice();
+		slice.limit(count * size);
+		in.position(in.position() + count * size);
+		return slice.order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,368 @@
+package de.tfelix.namegen;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Collects names and compiles them into a {@link NameIndex}. The names are
+ * appended to a single character array, so collecting them does not create
+ * a string per name.
+ * <p>
+ * Building sorts the names with a multikey quicksort and adds them in order
+ * to the automaton, as described by Daciuk et al. in "Incremental
+ * Construction of Minimal Acyclic Finite-State Automata". Only the states on
+ * the path of the last added name can still change. Once the next name
+ * leaves that path, its states are looked up in a hash table of the finished
+ * states and either replaced by an equal finished state or appended to the
+ * flat buffers of the index. The automaton is minimal without ever holding
+ * more than the finished states and a single path.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+final class NameIndexBuilder {
+
+	private final static int INSERTION_SORT_THRESHOLD = 12;
+
+	private char[] chars = new char[1024];
+	private int charCount;
+	/**
+	 * Start of every name in the characters, followed by the end of the last
+	 * name.
+	 */
+	private int[] starts = new int[64];
+	private int count;
+
+	// The automaton which is being built.
+	private int[] firstEdge;
+	private boolean[] ends;
+	private char[] edgeSymbol;
+	private int[] edgeTarget;
+	private int stateCount;
+	private int edgeCount;
+	private int[] table;
+
+	/**
+	 * Adds a name. Empty names are ignored.
+	 *
+	 * @param name
+	 *            The name, it is copied and lower cased code point by code
+	 *            point.
+	 */
+	void add(CharSequence name) {
+		final int length = name.length();
+		if (length == 0) {
+			return;
+		}
+		ensureChars(length);
+		int i = 0;
+		while (i < length) {
+			final int codePoint = Character.codePointAt(name, i);
+			Character.toChars(NameIndex.lowerCase(codePoint), chars, charCount + i);
+			i += Character.charCount(codePoint);
+		}
+		charCount += length;
+		if (count + 2 > starts.length) {
+			starts = Arrays.copyOf(starts, starts.length * 2);
+		}
+		starts[++count] = charCount;
+	}
+
+	/**
+	 * Adds all names of the other builder.
+	 *
+	 * @param other
+	 *            The builder to add the names from.
+	 */
+	void addAll(NameIndexBuilder other) {
+		ensureChars(other.charCount);
+		System.arraycopy(other.chars, 0, chars, charCount, other.charCount);
+		if (count + other.count + 1 > starts.length) {
+			starts = Arrays.copyOf(starts, Math.max(starts.length * 2, count + other.count + 1));
+		}
+		for (int i = 1; i <= other.count; i++) {
+			starts[count + i] = charCount + other.starts[i];
+		}
+		count += other.count;
+		charCount += other.charCount;
+	}
+
+	private void ensureChars(int length) {
+		if (charCount + length > chars.length) {
+			if (charCount + (long) length > Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("The names are too long in total to be indexed.");
+			}
+			final long capacity = Math.max(charCount + (long) length, chars.length * 2L);
+			chars = Arrays.copyOf(chars, (int) Math.min(capacity, Integer.MAX_VALUE - 8));
+		}
+	}
+
+	/**
+	 * @return Number of added names, including duplicates.
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * Builds the minimal automaton of the added names. The builder can be used
+	 * further afterwards.
+	 *
+	 * @return The index of the distinct names.
+	 */
+	NameIndex build() {
+		final int[] ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = i;
+		}
+		sort(ids, 0, count, 0);
+
+		firstEdge = new int[64];
+		ends = new boolean[64];
+		edgeSymbol = new char[64];
+		edgeTarget = new int[64];
+		stateCount = 0;
+		edgeCount = 0;
+		table = new int[64];
+
+		// The path of the last added name: its states can still get new edges.
+		Pending[] path = new Pending[] { new Pending() };
+		int previous = -1;
+		int previousLength = 0;
+		long names = 0;
+		for (int id : ids) {
+			final int start = starts[id];
+			final int length = starts[id + 1] - start;
+			final int prefix = previous < 0 ? 0 : commonPrefix(previous, id);
+			if (prefix == length && length == previousLength) {
+				continue;
+			}
+			freeze(path, previousLength, prefix);
+			if (length >= path.length) {
+				final int oldLength = path.length;
+				path = Arrays.copyOf(path, Math.max(length + 1, path.length * 2));
+				for (int depth = oldLength; depth < path.length; depth++) {
+					path[depth] = new Pending();
+				}
+			}
+			for (int depth = prefix + 1; depth <= length; depth++) {
+				path[depth].clear();
+				path[depth - 1].add(chars[start + depth - 1]);
+			}
+			path[length].end = true;
+			previous = id;
+			previousLength = length;
+			names++;
+		}
+		freeze(path, previousLength, 0);
+		final int root = register(path[0]);
+
+		final NameIndex index = new NameIndex(names, root, IntBuffer.wrap(Arrays.copyOf(firstEdge, stateCount + 1)),
+				CharBuffer.wrap(Arrays.copyOf(edgeSymbol, edgeCount)), IntBuffer.wrap(Arrays.copyOf(edgeTarget,
+						edgeCount)));
+		firstEdge = null;
+		ends = null;
+		edgeSymbol = null;
+		edgeTarget = null;
+		table = null;
+		return index;
+	}
+
+	/**
+	 * Finishes the states of the path below the depth, deepest first, and
+	 * points the last edge of their parents to the finished state.
+	 */
+	private void freeze(Pending[] path, int fromDepth, int toDepth) {
+		for (int depth = fromDepth; depth > toDepth; depth--) {
+			final int state = register(path[depth]);
+			path[depth - 1].targets[path[depth - 1].size - 1] = path[depth].end ? state | NameIndex.END : state;
+		}
+	}
+
+	/**
+	 * Returns the finished state which equals the pending state, or appends
+	 * the pending state as a new finished state.
+	 */
+	private int register(Pending pending) {
+		final int hash = pending.contentHash();
+		int slot = hash & (table.length - 1);
+		for (int entry = table[slot]; entry != 0; entry = table[slot]) {
+			if (equal(entry - 1, pending)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+
+		final int state = stateCount++;
+		if (stateCount + 1 > firstEdge.length) {
+			firstEdge = Arrays.copyOf(firstEdge, firstEdge.length * 2);
+			ends = Arrays.copyOf(ends, ends.length * 2);
+		}
+		if (edgeCount + pending.size > edgeSymbol.length) {
+			final int capacity = Math.max(edgeSymbol.length * 2, edgeCount + pending.size);
+			edgeSymbol = Arrays.copyOf(edgeSymbol, capacity);
+			edgeTarget = Arrays.copyOf(edgeTarget, capacity);
+		}
+		System.arraycopy(pending.symbols, 0, edgeSymbol, edgeCount, pending.size);
+		System.arraycopy(pending.targets, 0, edgeTarget, edgeCount, pending.size);
+		edgeCount += pending.size;
+		firstEdge[state + 1] = edgeCount;
+		ends[state] = pending.end;
+
+		table[slot] = state + 1;
+		if (stateCount * 2 > table.length) {
+			rehash();
+		}
+		return state;
+	}
+
+	private boolean equal(int state, Pending pending) {
+		final int first = firstEdge[state];
+		if (ends[state] != pending.end || firstEdge[state + 1] - first != pending.size) {
+			return false;
+		}
+		for (int i = 0; i < pending.size; i++) {
+			if (edgeSymbol[first + i] != pending.symbols[i] || edgeTarget[first + i] != pending.targets[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		for (int state = 0; state < stateCount; state++) {
+			int hash = hash(ends[state]);
+			for (int edge = firstEdge[state]; edge < firstEdge[state + 1]; edge++) {
+				hash = hash(hash, edgeSymbol[edge], edgeTarget[edge]);
+			}
+			int slot = hash & (table.length - 1);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			table[slot] = state + 1;
+		}
+	}
+
+	private static int hash(boolean end) {
+		return end ? 1 : 0;
+	}
+
+	private static int hash(int hash, char symbol, int target) {
+		final int h = (hash * 31 + symbol) * 0x9E3779B9 + target;
+		return h ^ (h >>> 16);
+	}
+
+	private int commonPrefix(int a, int b) {
+		final int startA = starts[a];
+		final int startB = starts[b];
+		final int length = Math.min(starts[a + 1] - startA, starts[b + 1] - startB);
+		int i = 0;
+		while (i < length && chars[startA + i] == chars[startB + i]) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return The symbol of the name at the depth or -1 if the name is
+	 *         shorter, so shorter names are sorted first.
+	 */
+	private int symbol(int id, int depth) {
+		final int position = starts[id] + depth;
+		return position < starts[id + 1] ? chars[position] : -1;
+	}
+
+	/**
+	 * Sorts the names from the low to the high index, which share their first
+	 * depth symbols. Names with a smaller symbol at the depth go left, with a
+	 * bigger go right and the equal ones are sorted by the next symbol.
+	 */
+	private void sort(int[] ids, int low, int high, int depth) {
+		while (high - low > INSERTION_SORT_THRESHOLD) {
+			final int pivot = median(symbol(ids[low], depth), symbol(ids[(low + high) >>> 1], depth),
+					symbol(ids[high - 1], depth));
+			int less = low;
+			int greater = high;
+			int i = low;
+			while (i < greater) {
+				final int symbol = symbol(ids[i], depth);
+				if (symbol < pivot) {
+					swap(ids, less++, i++);
+				} else if (symbol > pivot) {
+					swap(ids, i, --greater);
+				} else {
+					i++;
+				}
+			}
+			sort(ids, low, less, depth);
+			sort(ids, greater, high, depth);
+			if (pivot < 0) {
+				// The equal names all ended.
+				return;
+			}
+			low = less;
+			high = greater;
+			depth++;
+		}
+		for (int i = low + 1; i < high; i++) {
+			for (int j = i; j > low && compare(ids[j - 1], ids[j], depth) > 0; j--) {
+				swap(ids, j - 1, j);
+			}
+		}
+	}
+
+	private int compare(int a, int b, int depth) {
+		while (true) {
+			final int symbolA = symbol(a, depth);
+			final int symbolB = symbol(b, depth);
+			if (symbolA != symbolB || symbolA < 0) {
+				return symbolA - symbolB;
+			}
+			depth++;
+		}
+	}
+
+	private static int median(int a, int b, int c) {
+		return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+	}
+
+	private static void swap(int[] ids, int i, int j) {
+		final int id = ids[i];
+		ids[i] = ids[j];
+		ids[j] = id;
+	}
+
+	/**
+	 * State on the path of the last added name. Its last edge points to the
+	 * next pending state until that one is finished.
+	 */
+	private static final class Pending {
+		private boolean end;
+		private char[] symbols = new char[4];
+		private int[] targets = new int[4];
+		private int size;
+
+		private void clear() {
+			end = false;
+			size = 0;
+		}
+
+		private void add(char symbol) {
+			if (size == symbols.length) {
+				symbols = Arrays.copyOf(symbols, size * 2);
+				targets = Arrays.copyOf(targets, size * 2);
+			}
+			symbols[size++] = symbol;
+		}
+
+		private int contentHash() {
+			int hash = hash(end);
+			for (int i = 0; i < size; i++) {
+				hash = hash(hash, symbols[i], targets[i]);
+			}
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package de.tfelix.namegen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of names for multiple producers and consumers. It
+ * is a ring of slots where every slot carries a sequence number which tells
+ * whether the slot is free for the producer of a position or filled for its
+ * consumer. A thread claims a position with a single compare and set of the
+ * head or the tail and then owns its slot, so offering and polling never
+ * block and do not allocate.
+ *
+ * @author Thomas Felix
+ */
+final class NameRing {
+
+	private final AtomicReferenceArray<String> slots;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            Minimal number of names the ring holds, rounded up to a power
+	 *            of two.
+	 */
+	NameRing(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+		}
+		final int size = Integer.highestOneBit((capacity - 1) << 1 | 1);
+		this.slots = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Adds the name if the ring is not full.
+	 *
+	 * @param name
+	 *            The name to add.
+	 * @return False if the ring is full.
+	 */
+	boolean offer(String name) {
+		long position = tail.get();
+		while (true) {
+			final int slot = (int) position & mask;
+			final long difference = sequences.get(slot) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.lazySet(slot, name);
+					// Publishes the name to the consumer of the position.
+					sequences.set(slot, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				// The consumer of the previous round did not free the slot yet.
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest name.
+	 *
+	 * @return The name or null if the ring is empty.
+	 */
+	String poll() {
+		long position = head.get();
+		while (true) {
+			final int slot = (int) position & mask;
+			final long difference = sequences.get(slot) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					final String name = slots.get(slot);
+					slots.lazySet(slot, null);
+					// Frees the slot for the producer of the next round.
+					sequences.set(slot, position + mask + 1);
+					return name;
+				}
+				position = head.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+
+	/**
+	 * @return Number of names in the ring. It is only an estimate while other
+	 *         threads use the ring.
+	 */
+	int size() {
+		final long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity()));
+	}
+
+	/**
+	 * @return Number of names the ring can hold.
+	 */
+	int capacity() {
+		return mask + 1;
+	}
+}
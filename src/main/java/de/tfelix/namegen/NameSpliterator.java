@@ -0,0 +1,73 @@
+package de.tfelix.namegen;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import de.tfelix.namegen.model.RuntimeModel;
+
+/**
+ * Generates a fixed number of names. When the spliterator is split, the new
+ * part gets its own split off {@link SplittableRandom}, so parallel streams
+ * generate on every core without sharing any random state. Names of the
+ * excluded index are drawn again.
+ *
+ * @author Thomas Felix
+ */
+final class NameSpliterator implements Spliterator<String> {
+
+	private final RuntimeModel<Random> model;
+	private final NameIndex excluded;
+	private final SplittableRandom random;
+	private final Random adapter;
+	private long index;
+	private final long fence;
+
+	NameSpliterator(RuntimeModel<Random> model, NameIndex excluded, SplittableRandom random, long index, long fence) {
+		this.model = model;
+		this.excluded = excluded;
+		this.random = random;
+		this.adapter = new SplittableRandomAdapter(random);
+		this.index = index;
+		this.fence = fence;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super String> action) {
+		if (index >= fence) {
+			return false;
+		}
+		index++;
+		action.accept(NameGen.generate(model, adapter, excluded));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super String> action) {
+		for (; index < fence; index++) {
+			action.accept(NameGen.generate(model, adapter, excluded));
+		}
+	}
+
+	@Override
+	public Spliterator<String> trySplit() {
+		final long mid = (index + fence) >>> 1;
+		if (mid <= index) {
+			return null;
+		}
+		final NameSpliterator prefix = new NameSpliterator(model, excluded, random.split(), index, mid);
+		index = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return fence - index;
+	}
+
+	@Override
+	public int characteristics() {
+		return SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+}
@@ -0,0 +1,151 @@
+package de.tfelix.namegen;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out names which were generated ahead of time, so getting a name is a
+ * single dequeue from a lock-free ring buffer instead of walking the Markov
+ * chain. A background thread fills the buffer and sleeps until it drops
+ * below the low watermark.
+ * <p>
+ * If the buffer is empty because names are requested faster than they are
+ * generated, the name is generated on the calling thread, so
+ * {@link #getName()} never blocks. Names come from the model which was
+ * current when they were generated, so a generator of a model which keeps
+ * learning might hand out up to a buffer of names from an older snapshot.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public class PooledNameGen implements AutoCloseable {
+
+	private final static Logger logger = LoggerFactory.getLogger(PooledNameGen.class);
+	private final static long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final NameGen<?> nameGen;
+	private final NameRing pool;
+	private final int lowWatermark;
+	private final Thread refill;
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Set by the refill thread before it parks, so only the first consumer
+	 * which notices the low watermark wakes it up.
+	 */
+	private volatile boolean sleeping;
+	private volatile boolean closed;
+	/**
+	 * Number of rounds the refill thread filled the pool, only written by it.
+	 */
+	private volatile long refills;
+
+	/**
+	 * Creates the pool and starts filling it in the background.
+	 *
+	 * @param nameGen
+	 *            The generator to fill the pool with. It is only used by the
+	 *            refill thread, unless the pool runs empty.
+	 * @param capacity
+	 *            Minimal number of names the pool holds, rounded up to a power
+	 *            of two.
+	 * @param lowWatermark
+	 *            The pool is refilled once it holds fewer names.
+	 */
+	public PooledNameGen(NameGen<?> nameGen, int capacity, int lowWatermark) {
+		if (nameGen == null) {
+			throw new IllegalArgumentException("nameGen can not be null.");
+		}
+		if (lowWatermark < 1 || lowWatermark > capacity) {
+			throw new IllegalArgumentException("lowWatermark must be between 1 and capacity.");
+		}
+		this.nameGen = nameGen;
+		this.pool = new NameRing(capacity);
+		this.lowWatermark = lowWatermark;
+		this.refill = new Thread(this::refill, "namegen-pool-refill");
+		refill.setDaemon(true);
+		refill.start();
+	}
+
+	/**
+	 * Returns a pre-generated name, or generates one if the pool is empty.
+	 *
+	 * @return A new random name.
+	 */
+	public String getName() {
+		final String name = pool.poll();
+		if (sleeping && pool.size() < lowWatermark) {
+			sleeping = false;
+			LockSupport.unpark(refill);
+		}
+		if (name != null) {
+			return name;
+		}
+		misses.increment();
+		return nameGen.getName();
+	}
+
+	/**
+	 * @return Number of names which are ready to be handed out.
+	 */
+	public int available() {
+		return pool.size();
+	}
+
+	/**
+	 * @return Number of names which had to be generated on the calling thread
+	 *         because the pool was empty.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return Number of times the refill thread started filling the pool,
+	 *         including the initial fill.
+	 */
+	long getRefills() {
+		return refills;
+	}
+
+	/**
+	 * Stops the refill thread. Names can still be requested afterwards, they
+	 * are generated on the calling thread once the pool is empty.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(refill);
+	}
+
+	private void refill() {
+		while (!closed) {
+			refills++;
+			try {
+				while (!closed && pool.size() < pool.capacity()) {
+					final String name = nameGen.getName();
+					// A consumer might still be freeing the slot, so a failed offer is retried.
+					while (!pool.offer(name) && !closed && pool.size() < pool.capacity()) {
+						Thread.yield();
+					}
+				}
+			} catch (RuntimeException e) {
+				// Consumers fall back to generating on their own thread, so the pool only retries later.
+				logger.error("Could not refill the name pool.", e);
+				LockSupport.parkNanos(this, RETRY_NANOS);
+				continue;
+			}
+			sleeping = true;
+			// Checking before parking catches a consumer which drained the pool before it saw the flag, checking
+			// after it keeps sleeping on a spurious wake up, so the pool is only refilled below the watermark.
+			while (!closed && pool.size() >= lowWatermark) {
+				LockSupport.park(this);
+			}
+			sleeping = false;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package de.tfelix.namegen;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Lets a {@link SplittableRandom} be used where the model expects a
+ * {@link Random}. All the random bits come from the splittable random, so the
+ * atomic seed of {@link Random} is never touched and every thread can work
+ * with its own independent instance.
+ *
+ * @author Thomas Felix
+ */
+final class SplittableRandomAdapter extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private final SplittableRandom random;
+
+	SplittableRandomAdapter(SplittableRandom random) {
+		this.random = random;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return random.nextInt() >>> (32 - bits);
+	}
+}
@@ -0,0 +1,108 @@
+package de.tfelix.namegen;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Generates names which are distinct from every name it generated before.
+ * The generated names are remembered in a Bloom filter, so the memory does
+ * not grow with the number of names. The price is that some names which were
+ * not generated yet are rejected as well, with the configured false positive
+ * rate.
+ * <p>
+ * A name which was already generated is thrown away and a new one is drawn.
+ * If the maximal number of attempts is reached for a single name, the model
+ * is considered to be exhausted and no more names are generated. The
+ * generator can be used by multiple threads at once if the underlying
+ * {@link NameGen} can.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public class UniqueNameGen {
+
+	private final NameGen<?> nameGen;
+	private final ConcurrentBloomFilter generated;
+	private final int maxAttempts;
+	private final AtomicLong count = new AtomicLong();
+	private volatile boolean exhausted;
+
+	/**
+	 * @param nameGen
+	 *            The generator to draw the names from.
+	 * @param expectedNames
+	 *            Number of distinct names which will be generated. The false
+	 *            positive rate gets worse if more are generated.
+	 * @param falsePositiveRate
+	 *            Rate of new names being rejected as if they were generated
+	 *            before. E.g. 0.001.
+	 * @param maxAttempts
+	 *            Maximal number of names drawn to find a single new name.
+	 */
+	public UniqueNameGen(NameGen<?> nameGen, long expectedNames, double falsePositiveRate, int maxAttempts) {
+		if (nameGen == null) {
+			throw new IllegalArgumentException("nameGen can not be null.");
+		}
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be at least 1.");
+		}
+		this.nameGen = nameGen;
+		this.generated = new ConcurrentBloomFilter(expectedNames, falsePositiveRate);
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Returns a name which was not returned before.
+	 * 
+	 * @return A new distinct name.
+	 * @throws NoSuchElementException
+	 *             if no new name was found within the maximal number of
+	 *             attempts, now or in a previous call.
+	 */
+	public String next() {
+		for (int attempt = 0; attempt < maxAttempts && !exhausted; attempt++) {
+			final String name = nameGen.getName();
+			if (generated.add(name)) {
+				count.incrementAndGet();
+				return name;
+			}
+		}
+		exhausted = true;
+		throw new NoSuchElementException(String.format(
+				"No new name found in %d attempts after %d distinct names.", maxAttempts, count.get()));
+	}
+
+	/**
+	 * Returns a stream of distinct names. Calling parallel() on it generates
+	 * the names on multiple threads. A parallel stream might draw a few more
+	 * names than it returns, these are counted as generated.
+	 * 
+	 * @param count
+	 *            Number of names in the stream.
+	 * @return The names.
+	 * @throws NoSuchElementException
+	 *             from the terminal operation if the model is exhausted before
+	 *             enough names were found.
+	 */
+	public Stream<String> names(long count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative.");
+		}
+		return Stream.generate(this::next).limit(count);
+	}
+
+	/**
+	 * @return True if no more new names are generated.
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * @return Number of distinct names generated so far.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+}
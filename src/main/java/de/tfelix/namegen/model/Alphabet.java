@@ -0,0 +1,58 @@
+package de.tfelix.namegen.model;
+
+import com.ibm.icu.text.UnicodeSet;
+import com.ibm.icu.util.LocaleData;
+import com.ibm.icu.util.ULocale;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.ibm.icu.util.LocaleData.ES_STANDARD;
+
+/**
+ * The letters of a locale which can be generated even if they were never seen
+ * in the training data. Looking up the exemplar set is expensive, so the
+ * letters are determined once per locale and shared by all transitions.
+ *
+ * @author Thomas Felix
+ */
+final class Alphabet {
+
+    private static final ConcurrentMap<ULocale, int[]> ALPHABETS = new ConcurrentHashMap<>();
+
+    private Alphabet() {
+        // no instances
+    }
+
+    /**
+     * Returns the letters of the locale. The returned array is shared and must
+     * not be modified.
+     *
+     * @param locale The locale to get the letters for.
+     * @return The code points of the distinct letters of the locale in ascending order.
+     */
+    static int[] of(ULocale locale) {
+        return ALPHABETS.computeIfAbsent(locale, Alphabet::load);
+    }
+
+    private static int[] load(ULocale locale) {
+        final UnicodeSet exemplars = LocaleData.getExemplarSet(locale, ES_STANDARD);
+        final int[] letters = new int[exemplars.size()];
+        int count = 0;
+        final Iterator<String> iterator = exemplars.iterator();
+        while (iterator.hasNext()) {
+            letters[count++] = iterator.next().codePointAt(0);
+        }
+        Arrays.sort(letters, 0, count);
+        // Exemplars with multiple code points might share their first one.
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || letters[distinct - 1] != letters[i]) {
+                letters[distinct++] = letters[i];
+            }
+        }
+        return Arrays.copyOf(letters, distinct);
+    }
+}
@@ -0,0 +1,146 @@
+package de.tfelix.namegen.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Reads and writes the compiled form of a {@link RuntimeModel}. In contrast to
+ * the JSON format the file contains the flat buffers the model samples from,
+ * so loading it only memory maps the file and the model is used straight from
+ * the mapping without deserializing anything.
+ * <p>
+ * All values are little endian. The file starts with the header:
+ * </p>
+ * <ul>
+ * <li>magic number "NGMB" and format version</li>
+ * <li>order of the model</li>
+ * <li>length of the language code and the UTF-8 encoded language code, padded
+ * to four bytes</li>
+ * </ul>
+ * <p>
+ * It is followed by the context trie with the observed symbols, the cumulative
+ * probabilities and the prior of all transitions, the code points of the
+ * symbol table and the alphabet the priors apply to. Symbols are stored as
+ * their id in the symbol table, in one byte if the model knows at most 256
+ * symbols and in two bytes otherwise. The cumulative probabilities are floats
+ * or, for a quantized model, 8 or 16 bit fractions. A single model file is
+ * limited to 2 GB.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public final class BinaryModelFormat {
+
+    private static final int MAGIC = 'N' | 'G' << 8 | 'M' << 16 | 'B' << 24;
+    private static final int VERSION = 4;
+
+    private BinaryModelFormat() {
+        // no instances
+    }
+
+    /**
+     * Writes the model to the file. An existing file is overwritten.
+     *
+     * @param model The model to write.
+     * @param path  The file to write to.
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(RuntimeModel<?> model, Path path) throws IOException {
+        final byte[] languageCode = model.language_code.getBytes(StandardCharsets.UTF_8);
+        final int padding = (4 - languageCode.length % 4) % 4;
+        final ContextTrie contexts = model.getContexts();
+        final long size = size(model);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The model is too big for the binary format.");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(model.order);
+            out.putInt(languageCode.length);
+            out.put(languageCode);
+            out.put(new byte[padding]);
+            contexts.writeTo(out);
+            out.force();
+        }
+    }
+
+    /**
+     * Computes the size of the file the model would be written to.
+     *
+     * @param model The model to measure.
+     * @return The size in bytes.
+     */
+    public static long size(RuntimeModel<?> model) {
+        final int languageCode = model.language_code.getBytes(StandardCharsets.UTF_8).length;
+        return 16L + languageCode + (4 - languageCode % 4) % 4 + model.getContexts().byteSize();
+    }
+
+    /**
+     * Checks if the file starts with the magic number of this format.
+     *
+     * @param path The file to check.
+     * @return True if it is a binary model file.
+     * @throws IOException if the file could not be read.
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // read until the magic number is there or the file ended
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Memory maps the model file. The returned model samples straight from the
+     * mapping. Its transitions are only recreated when they are accessed, e.g.
+     * when the model is exported as JSON.
+     *
+     * @param path The file to read.
+     * @param <R>  The type of random number generator the model is used with.
+     * @return The model backed by the file.
+     * @throws IOException if the file could not be read.
+     * @throws IllegalArgumentException if the file is not a valid model file.
+     */
+    public static <R extends Random> RuntimeModel<R> read(Path path) throws IOException {
+        final MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The model file is too big.");
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < 16 || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("The file is not a binary model file.");
+        }
+        final int version = in.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported model file version %d.", version));
+        }
+        final int order = in.getInt();
+        final int languageCodeLength = in.getInt();
+        if (languageCodeLength < 0 || languageCodeLength > in.remaining()) {
+            throw new IllegalArgumentException("The model file is corrupt.");
+        }
+        final byte[] languageCode = new byte[languageCodeLength];
+        in.get(languageCode);
+        in.position(in.position() + (4 - languageCodeLength % 4) % 4);
+
+        final ContextTrie contexts = ContextTrie.readFrom(order, in);
+        return new RuntimeModel<>(order, new String(languageCode, StandardCharsets.UTF_8), contexts);
+    }
+}
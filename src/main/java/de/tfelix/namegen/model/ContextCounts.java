@@ -0,0 +1,407 @@
+package de.tfelix.namegen.model;
+
+import com.ibm.icu.util.ULocale;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Counts which character follows which context during training without
+ * creating any objects per character. Contexts are nodes of a trie which is
+ * walked backwards from the newest character, so the contexts of all orders
+ * ending at a position lie on one path and are reached by following a single
+ * edge each. Edges and counts are kept in primitive open addressing tables
+ * keyed by the node and the character, the outputs of every node are linked
+ * so a single context can be built on its own. Characters are code points,
+ * so a supplementary character like an emoji is a single symbol.
+ * <p>
+ * Nodes are only ever added, a child always has a bigger id than its parent.
+ * The root is the empty context, which is never counted.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+final class ContextCounts implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final int order;
+    private final int start;
+    private final int end;
+
+    private int nodeCount = 1;
+    private int[] parent = new int[64];
+    private int[] symbol = new int[64];
+    private int[] observations = new int[64];
+    private int[] firstOutput = filled(64);
+    private final LongIntTable childIndex = new LongIntTable();
+
+    private int outputSize;
+    private int[] outputSymbol = new int[64];
+    private int[] outputCounts = new int[64];
+    private int[] nextOutput = new int[64];
+    private final LongIntTable outputIndex = new LongIntTable();
+
+    /**
+     * The code points of the name being counted, reused between names.
+     */
+    private transient int[] codePoints;
+
+    /**
+     * @param order Length of the longest counted context.
+     */
+    ContextCounts(int order) {
+        this.order = order;
+        this.start = SymbolManager.getStartSymbol(1).codePointAt(0);
+        this.end = SymbolManager.getEndSymbol();
+        parent[ROOT] = NONE;
+    }
+
+    /**
+     * Counts every character of the name and the end symbol after all
+     * contexts of length 1 to order in front of it. Positions in front of
+     * the name are the start symbol.
+     *
+     * @param name    The name to count.
+     * @param touched Receives the ids of all changed contexts, may be null.
+     */
+    void update(CharSequence name, BitSet touched) {
+        final int length = toCodePoints(name);
+        final int[] codePoints = this.codePoints;
+        for (int i = 0; i <= length; i++) {
+            final int output = i < length ? codePoints[i] : end;
+            int node = ROOT;
+            for (int j = i - 1; j >= i - order; j--) {
+                node = child(node, j >= 0 ? codePoints[j] : start);
+                add(node, output, 1);
+                if (touched != null) {
+                    touched.set(node);
+                }
+            }
+        }
+    }
+
+    private int toCodePoints(CharSequence name) {
+        if (codePoints == null || codePoints.length < name.length()) {
+            codePoints = new int[Math.max(32, name.length())];
+        }
+        int length = 0;
+        for (int i = 0; i < name.length(); ) {
+            final int codePoint = Character.codePointAt(name, i);
+            codePoints[length++] = codePoint;
+            i += Character.charCount(codePoint);
+        }
+        return length;
+    }
+
+    /**
+     * Adds all counts of the other instance.
+     *
+     * @param other Counts with the same order.
+     */
+    void merge(ContextCounts other) {
+        // Parents have smaller ids than their children, so they are always mapped first.
+        final int[] mapped = new int[other.nodeCount];
+        mapped[ROOT] = ROOT;
+        for (int node = 1; node < other.nodeCount; node++) {
+            mapped[node] = child(mapped[other.parent[node]], other.symbol[node]);
+            for (int o = other.firstOutput[node]; o != NONE; o = other.nextOutput[o]) {
+                add(mapped[node], other.outputSymbol[o], other.outputCounts[o]);
+            }
+        }
+    }
+
+    /**
+     * @return The number of nodes including the root.
+     */
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @param node The id of a node.
+     * @return The context of the node in reading order.
+     */
+    String context(int node) {
+        final StringBuilder context = new StringBuilder();
+        for (int n = node; n != ROOT; n = parent[n]) {
+            context.appendCodePoint(symbol[n]);
+        }
+        return context.toString();
+    }
+
+    /**
+     * Builds the runtime transition of the counts of a node.
+     *
+     * @param node   The id of a node other than the root.
+     * @param prior  The prior of every letter of the alphabet.
+     * @param locale The locale of the alphabet.
+     * @return The runtime transition.
+     */
+    Transition build(int node, float prior, ULocale locale) {
+        int size = 0;
+        for (int o = firstOutput[node]; o != NONE; o = nextOutput[o]) {
+            size++;
+        }
+        final int[] symbols = new int[size];
+        final int[] counts = new int[size];
+        int i = 0;
+        for (int o = firstOutput[node]; o != NONE; o = nextOutput[o]) {
+            symbols[i] = outputSymbol[o];
+            counts[i++] = outputCounts[o];
+        }
+        return Transition.build(prior, locale, symbols, counts, observations[node]);
+    }
+
+    /**
+     * Selects the contexts which are kept by the pruning. Contexts are
+     * compared to the longest kept suffix, which is the context the model
+     * uses instead of a removed one.
+     *
+     * @param pruning Decides which contexts are kept.
+     * @return The ids of the kept nodes.
+     */
+    BitSet select(Pruning pruning) {
+        final BitSet kept = new BitSet(nodeCount);
+        final int[] depth = new int[nodeCount];
+        final int[] backoff = new int[nodeCount];
+        final double[] gain = new double[nodeCount];
+        final double total = predictions();
+        for (int node = 1; node < nodeCount; node++) {
+            depth[node] = depth[parent[node]] + 1;
+            final int suffix = backoff[parent[node]];
+            boolean keep = depth[node] == 1;
+            if (!keep && observations[node] >= pruning.getMinCount()) {
+                if (pruning.ranksContexts()) {
+                    gain[node] = observations[node] / total * divergence(node, suffix);
+                }
+                keep = gain[node] >= pruning.getEntropyThreshold();
+            }
+            if (keep) {
+                kept.set(node);
+            }
+            backoff[node] = keep ? node : suffix;
+        }
+
+        if (pruning.getMaxContextsPerOrder() < Integer.MAX_VALUE) {
+            for (int length = 2; length <= order; length++) {
+                final List<Integer> candidates = new ArrayList<>();
+                for (int node = kept.nextSetBit(0); node >= 0; node = kept.nextSetBit(node + 1)) {
+                    if (depth[node] == length) {
+                        candidates.add(node);
+                    }
+                }
+                if (candidates.size() > pruning.getMaxContextsPerOrder()) {
+                    candidates.sort((a, b) -> Double.compare(gain[b], gain[a]));
+                    for (int node : candidates.subList(pruning.getMaxContextsPerOrder(), candidates.size())) {
+                        kept.clear(node);
+                    }
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Measures the quality of the selected contexts on the counted names. Every
+     * character was predicted by a context of full length, as the names are
+     * padded with start symbols. With pruning it is predicted by the longest
+     * kept suffix of that context instead.
+     *
+     * @param kept The ids of the kept nodes.
+     * @return The report.
+     */
+    PruningReport report(BitSet kept) {
+        final int[] depth = new int[nodeCount];
+        final int[] backoff = new int[nodeCount];
+        final int[] before = new int[order + 1];
+        final int[] after = new int[order + 1];
+        double crossEntropy = 0;
+        double loss = 0;
+        for (int node = 1; node < nodeCount; node++) {
+            depth[node] = depth[parent[node]] + 1;
+            backoff[node] = kept.get(node) ? node : backoff[parent[node]];
+            before[depth[node]]++;
+            if (kept.get(node)) {
+                after[depth[node]]++;
+            }
+            if (depth[node] == order) {
+                for (int o = firstOutput[node]; o != NONE; o = nextOutput[o]) {
+                    final double p = outputCounts[o] / (double) observations[node];
+                    final double q = probability(backoff[node], outputSymbol[o]);
+                    crossEntropy -= outputCounts[o] * log2(p);
+                    loss += outputCounts[o] * log2(p / q);
+                }
+            }
+        }
+        final double total = predictions();
+        return new PruningReport(before, after, total > 0 ? crossEntropy / total : 0, total > 0 ? loss / total : 0);
+    }
+
+    /**
+     * @return The number of predicted characters, which is the number of observations of all single characters.
+     */
+    private double predictions() {
+        double total = 0;
+        for (int node = 1; node < nodeCount; node++) {
+            if (parent[node] == ROOT) {
+                total += observations[node];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Relative entropy in bits between the distributions of a context and its
+     * suffix. Every output of a context was observed for its suffixes as well.
+     */
+    private double divergence(int node, int suffix) {
+        double divergence = 0;
+        for (int o = firstOutput[node]; o != NONE; o = nextOutput[o]) {
+            final double p = outputCounts[o] / (double) observations[node];
+            divergence += p * log2(p / probability(suffix, outputSymbol[o]));
+        }
+        return divergence;
+    }
+
+    private double probability(int node, int output) {
+        return outputCounts[outputIndex.get(key(node, output))] / (double) observations[node];
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    private int child(int node, int c) {
+        final long key = key(node, c);
+        final int existing = childIndex.get(key);
+        if (existing != NONE) {
+            return existing;
+        }
+        if (nodeCount == parent.length) {
+            final int capacity = nodeCount * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            symbol = Arrays.copyOf(symbol, capacity);
+            observations = Arrays.copyOf(observations, capacity);
+            firstOutput = Arrays.copyOf(firstOutput, capacity);
+            Arrays.fill(firstOutput, nodeCount, capacity, NONE);
+        }
+        final int created = nodeCount++;
+        parent[created] = node;
+        symbol[created] = c;
+        childIndex.put(key, created);
+        return created;
+    }
+
+    private void add(int node, int output, int count) {
+        final long key = key(node, output);
+        int o = outputIndex.get(key);
+        if (o == NONE) {
+            if (outputSize == outputSymbol.length) {
+                final int capacity = outputSize * 2;
+                outputSymbol = Arrays.copyOf(outputSymbol, capacity);
+                outputCounts = Arrays.copyOf(outputCounts, capacity);
+                nextOutput = Arrays.copyOf(nextOutput, capacity);
+            }
+            o = outputSize++;
+            outputSymbol[o] = output;
+            nextOutput[o] = firstOutput[node];
+            firstOutput[node] = o;
+            outputIndex.put(key, o);
+        }
+        outputCounts[o] += count;
+        observations[node] += count;
+    }
+
+    private static long key(int node, int codePoint) {
+        // Code points have 21 bits.
+        return (long) node << 21 | codePoint;
+    }
+
+    private static int[] filled(int size) {
+        final int[] array = new int[size];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+
+    /**
+     * Open addressing hash table from non negative long keys to int values
+     * with linear probing.
+     */
+    private static final class LongIntTable implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private static final long EMPTY = -1L;
+
+        private long[] keys = filledKeys(64);
+        private int[] values = new int[64];
+        private int size;
+
+        int get(long key) {
+            final int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                final long k = keys[slot];
+                if (k == key) {
+                    return values[slot];
+                }
+                if (k == EMPTY) {
+                    return NONE;
+                }
+            }
+        }
+
+        void put(long key, int value) {
+            // Stay at most half full, so probe sequences are short.
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            insert(keys, values, key, value);
+            size++;
+        }
+
+        private void resize() {
+            final long[] newKeys = filledKeys(keys.length * 2);
+            final int[] newValues = new int[values.length * 2];
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    insert(newKeys, newValues, keys[slot], values[slot]);
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        private static void insert(long[] keys, int[] values, long key, int value) {
+            final int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private static int hash(long key) {
+            // Finalizer of MurmurHash3, the keys are far from random.
+            long h = key;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return (int) h;
+        }
+
+        private static long[] filledKeys(int size) {
+            final long[] array = new long[size];
+            Arrays.fill(array, EMPTY);
+            return array;
+        }
+    }
+}
@@ -0,0 +1,959 @@
+package de.tfelix.namegen.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compiled index over the contexts of a {@link RuntimeModel}. The contexts are
+ * inserted reversed, so walking the trie from the most recent character
+ * backwards finds the longest known suffix of the generated text. This is the
+ * same context the Katz backoff would find by repeatedly cutting off the first
+ * character, but without creating a single string.
+ * <p>
+ * The trie does not work on characters but on the dense ids of the
+ * {@link SymbolTable} of the model. The generated text is a sequence of ids,
+ * which are only turned into code points once a name is complete. The symbols
+ * of edges and outputs are stored in a single byte if the model knows at most
+ * 256 symbols and in two bytes otherwise.
+ * </p>
+ * <p>
+ * The nodes and the distributions of their transitions are stored in flat
+ * buffers. The children of a node are contiguous and sorted by their symbol,
+ * so a child is found by a binary search. The distribution of a transition is
+ * stored as the observed symbols with their cumulative probability, so a
+ * symbol is picked by a binary search as well. Beyond the observed
+ * probability, every letter of the alphabet shared by all transitions has the
+ * prior probability of the transition. The buffers either wrap arrays or are views into a
+ * memory mapped model file, in which case the model is sampled without ever
+ * being deserialized.
+ * </p>
+ * <p>
+ * The cumulative probabilities are either floats or quantized to 8 or 16 bit
+ * fractions of 1, which shrinks the biggest part of the trie to a quarter or
+ * a half.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+final class ContextTrie {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextTrie.class);
+
+    private static final int NO_TRANSITION = -1;
+
+    /**
+     * Precision of cumulative probabilities stored as floats.
+     */
+    static final int FLOAT_PRECISION = 32;
+
+    private final int order;
+    private final SymbolTable symbols;
+    /**
+     * Number of bytes of a symbol id in the edge and output buffers, 1 or 2.
+     */
+    private final int symbolBytes;
+
+    /**
+     * Children of node n are the edges firstChild[n] until firstChild[n + 1].
+     */
+    private final IntBuffer firstChild;
+    private final ByteBuffer edgeSymbol;
+    private final IntBuffer edgeTarget;
+
+    /**
+     * Transition of the context ending in the node or NO_TRANSITION if the node
+     * is only part of a longer context.
+     */
+    private final IntBuffer nodeTransition;
+
+    /**
+     * Outputs of transition t are firstOutput[t] until firstOutput[t + 1].
+     */
+    private final IntBuffer firstOutput;
+    private final ByteBuffer outputSymbol;
+    private final int outputCount;
+    /**
+     * Cumulative probabilities as floats, null if they are quantized.
+     */
+    private final FloatBuffer outputCumulative;
+    /**
+     * Cumulative probabilities as 8 or 16 bit fractions, null if they are floats.
+     */
+    private final ByteBuffer quantizedCumulative;
+    private final int precision;
+    private final float scale;
+    private final FloatBuffer transitionPrior;
+
+    /**
+     * The ids of the letters the prior probabilities apply to.
+     */
+    private final int[] alphabet;
+    /**
+     * The code points of the letters, shared with the recreated transitions.
+     */
+    private final int[] alphabetCodePoints;
+
+    private final int delimiterTransition;
+    private final int fallback;
+
+    /**
+     * Receives the picks which failed, may be null.
+     */
+    private volatile Metrics metrics;
+
+    private ContextTrie(int order, SymbolTable symbols, IntBuffer firstChild, ByteBuffer edgeSymbol,
+                        IntBuffer edgeTarget, IntBuffer nodeTransition, IntBuffer firstOutput,
+                        ByteBuffer outputSymbol, FloatBuffer outputCumulative, ByteBuffer quantizedCumulative,
+                        int precision, FloatBuffer transitionPrior, int[] alphabet, int delimiterTransition) {
+        this.order = order;
+        this.symbols = symbols;
+        this.symbolBytes = symbols.symbolBytes();
+        this.firstChild = firstChild;
+        this.edgeSymbol = edgeSymbol;
+        this.edgeTarget = edgeTarget;
+        this.nodeTransition = nodeTransition;
+        this.firstOutput = firstOutput;
+        this.outputSymbol = outputSymbol;
+        this.outputCount = outputSymbol.limit() / symbolBytes;
+        this.outputCumulative = outputCumulative;
+        this.quantizedCumulative = quantizedCumulative;
+        this.precision = precision;
+        this.scale = precision < FLOAT_PRECISION ? 1f / ((1 << precision) - 1) : 1f;
+        this.transitionPrior = transitionPrior;
+        this.alphabet = alphabet;
+        this.alphabetCodePoints = new int[alphabet.length];
+        for (int i = 0; i < alphabet.length; i++) {
+            alphabetCodePoints[i] = symbols.codePoint(alphabet[i]);
+        }
+        this.delimiterTransition = delimiterTransition;
+        this.fallback = nodeTransition.get(0) != NO_TRANSITION ? nodeTransition.get(0) : delimiterTransition;
+    }
+
+    /**
+     * Builds the trie. The symbol table is made of all code points of the
+     * contexts, the outputs and the alphabet.
+     *
+     * @param order               The order of the model. Contexts are never longer than this.
+     * @param transitions         The transitions by their context.
+     * @param delimiterTransition Transition to use if not even the empty context is known.
+     * @param alphabet            The code points of the letters the prior probabilities of the transitions apply to.
+     * @return The compiled trie.
+     */
+    static ContextTrie compile(int order, Map<String, Transition> transitions, Transition delimiterTransition,
+                               int[] alphabet) {
+        final BitSet used = new BitSet();
+        for (int codePoint : alphabet) {
+            used.set(codePoint);
+        }
+        for (int codePoint : delimiterTransition.getSymbols()) {
+            used.set(codePoint);
+        }
+        for (Map.Entry<String, Transition> entry : transitions.entrySet()) {
+            entry.getKey().codePoints().forEach(used::set);
+            for (int codePoint : entry.getValue().getSymbols()) {
+                used.set(codePoint);
+            }
+        }
+        final int[] codePoints = used.stream().toArray();
+        final SymbolTable symbols = SymbolTable.of(codePoints, codePoints.length);
+
+        // Build a temporary pointer trie which is flattened breadth first.
+        final Node root = new Node();
+        int nodeCount = 1;
+        int transitionCount = 1;
+        int outputCount = delimiterTransition.getSymbols().length;
+        for (Map.Entry<String, Transition> entry : transitions.entrySet()) {
+            final String context = entry.getKey();
+            Node node = root;
+            for (int i = context.length(); i > 0; ) {
+                final int codePoint = Character.codePointBefore(context, i);
+                i -= Character.charCount(codePoint);
+                final int id = symbols.id(codePoint);
+                Node child = node.children.get(id);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(id, child);
+                    nodeCount++;
+                }
+                node = child;
+            }
+            node.transition = entry.getValue();
+            transitionCount++;
+            outputCount += entry.getValue().getSymbols().length;
+        }
+
+        final int[] firstChild = new int[nodeCount + 1];
+        final int[] edgeSymbol = new int[nodeCount - 1];
+        final int[] edgeTarget = new int[nodeCount - 1];
+        final int[] nodeTransition = new int[nodeCount];
+        final int[] firstOutput = new int[transitionCount + 1];
+        final int[] outputSymbol = new int[outputCount];
+        final float[] outputCumulative = new float[outputCount];
+        final float[] transitionPrior = new float[transitionCount];
+
+        final Deque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        int nodeId = 0;
+        int nextId = 1;
+        int transitionId = 0;
+        while (!queue.isEmpty()) {
+            final Node node = queue.poll();
+            if (node.transition != null) {
+                nodeTransition[nodeId] = transitionId;
+                transitionPrior[transitionId] = node.transition.getPrior();
+                addOutputs(symbols, node.transition, transitionId++, firstOutput, outputSymbol, outputCumulative);
+            } else {
+                nodeTransition[nodeId] = NO_TRANSITION;
+            }
+            firstChild[nodeId] = nextId - 1;
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                edgeSymbol[nextId - 1] = child.getKey();
+                edgeTarget[nextId - 1] = nextId;
+                queue.add(child.getValue());
+                nextId++;
+            }
+            nodeId++;
+        }
+        firstChild[nodeCount] = nodeCount - 1;
+        transitionPrior[transitionId] = delimiterTransition.getPrior();
+        addOutputs(symbols, delimiterTransition, transitionId, firstOutput, outputSymbol, outputCumulative);
+
+        final int[] alphabetIds = new int[alphabet.length];
+        for (int i = 0; i < alphabet.length; i++) {
+            alphabetIds[i] = symbols.id(alphabet[i]);
+        }
+        return new ContextTrie(order, symbols, IntBuffer.wrap(firstChild), pack(edgeSymbol, symbols.symbolBytes()),
+                IntBuffer.wrap(edgeTarget), IntBuffer.wrap(nodeTransition), IntBuffer.wrap(firstOutput),
+                pack(outputSymbol, symbols.symbolBytes()), FloatBuffer.wrap(outputCumulative), null,
+                FLOAT_PRECISION, FloatBuffer.wrap(transitionPrior), alphabetIds, transitionId);
+    }
+
+    private static void addOutputs(SymbolTable symbols, Transition transition, int transitionId, int[] firstOutput,
+                                   int[] outputSymbol, float[] outputCumulative) {
+        final int[] codePoints = transition.getSymbols();
+        final int start = firstOutput[transitionId];
+        for (int i = 0; i < codePoints.length; i++) {
+            outputSymbol[start + i] = symbols.id(codePoints[i]);
+        }
+        System.arraycopy(transition.getCumulative(), 0, outputCumulative, start, codePoints.length);
+        firstOutput[transitionId + 1] = start + codePoints.length;
+    }
+
+    /**
+     * Stores symbol ids with the given number of bytes each.
+     */
+    private static ByteBuffer pack(int[] ids, int bytes) {
+        final ByteBuffer packed = ByteBuffer.allocate(ids.length * bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes == 1) {
+                packed.put(i, (byte) ids[i]);
+            } else {
+                packed.putChar(i * 2, (char) ids[i]);
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Creates a copy whose cumulative probabilities are rounded to fractions
+     * with the given number of bits. Symbols whose probability is lower than
+     * the precision might no longer be picked.
+     *
+     * @param bits 8 or 16.
+     * @return The quantized trie.
+     */
+    ContextTrie quantize(int bits) {
+        if (bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("Probabilities can only be quantized to 8 or 16 bits.");
+        }
+        final int max = (1 << bits) - 1;
+        final ByteBuffer quantized = ByteBuffer.allocate(outputCount * bits / 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < outputCount; i++) {
+            final int value = Math.min(max, Math.round(cumulative(i) * max));
+            if (bits == 8) {
+                quantized.put(i, (byte) value);
+            } else {
+                quantized.putChar(i * 2, (char) value);
+            }
+        }
+        return new ContextTrie(order, symbols, firstChild, edgeSymbol, edgeTarget, nodeTransition, firstOutput,
+                outputSymbol, null, quantized, bits, transitionPrior, alphabet, delimiterTransition);
+    }
+
+    /**
+     * @return Number of bits a cumulative probability is stored with.
+     */
+    int precision() {
+        return precision;
+    }
+
+    private float cumulative(int output) {
+        switch (precision) {
+            case 8:
+                return (quantizedCumulative.get(output) & 0xff) * scale;
+            case 16:
+                return quantizedCumulative.getChar(output * 2) * scale;
+            default:
+                return outputCumulative.get(output);
+        }
+    }
+
+    /**
+     * Number of bytes {@link #writeTo(ByteBuffer)} writes.
+     *
+     * @return The size of the serialized trie.
+     */
+    long byteSize() {
+        long ints = 8L + firstChild.limit() + edgeTarget.limit() + nodeTransition.limit() + firstOutput.limit()
+                + transitionPrior.limit() + symbols.size() + alphabet.length;
+        if (precision == FLOAT_PRECISION) {
+            ints += outputCount;
+        }
+        // Pad the end to four bytes.
+        return ints * 4 + (tailSize(edgeTarget.limit(), outputCount, symbolBytes, precision) + 3) / 4 * 4;
+    }
+
+    /**
+     * Size of the buffers with values smaller than four bytes at the end of
+     * the serialized trie.
+     */
+    private static long tailSize(int edgeCount, int outputCount, int symbolBytes, int precision) {
+        final long symbols = ((long) edgeCount + outputCount) * symbolBytes;
+        return precision < FLOAT_PRECISION ? symbols + (long) outputCount * precision / 8 : symbols;
+    }
+
+    /**
+     * Writes the buffers of the trie. The four byte values come first, then
+     * the symbol ids and the quantized probabilities, the bigger of them
+     * first, so every buffer is aligned to its size if the target is aligned
+     * to four bytes.
+     *
+     * @param out The little endian buffer to write to.
+     */
+    void writeTo(ByteBuffer out) {
+        out.putInt(nodeTransition.limit());
+        out.putInt(edgeTarget.limit());
+        out.putInt(firstOutput.limit() - 1);
+        out.putInt(outputCount);
+        out.putInt(alphabet.length);
+        out.putInt(precision);
+        out.putInt(delimiterTransition);
+        out.putInt(symbols.size());
+        for (int i = 0; i < firstChild.limit(); i++) {
+            out.putInt(firstChild.get(i));
+        }
+        for (int i = 0; i < edgeTarget.limit(); i++) {
+            out.putInt(edgeTarget.get(i));
+        }
+        for (int i = 0; i < nodeTransition.limit(); i++) {
+            out.putInt(nodeTransition.get(i));
+        }
+        for (int i = 0; i < firstOutput.limit(); i++) {
+            out.putInt(firstOutput.get(i));
+        }
+        if (precision == FLOAT_PRECISION) {
+            for (int i = 0; i < outputCount; i++) {
+                out.putFloat(outputCumulative.get(i));
+            }
+        }
+        for (int i = 0; i < transitionPrior.limit(); i++) {
+            out.putFloat(transitionPrior.get(i));
+        }
+        symbols.writeTo(out);
+        for (int letter : alphabet) {
+            out.putInt(letter);
+        }
+        final boolean symbolsFirst = symbolsFirst(symbolBytes, precision);
+        if (symbolsFirst) {
+            putAll(out, edgeSymbol);
+            putAll(out, outputSymbol);
+        }
+        if (precision < FLOAT_PRECISION) {
+            putAll(out, quantizedCumulative);
+        }
+        if (!symbolsFirst) {
+            putAll(out, edgeSymbol);
+            putAll(out, outputSymbol);
+        }
+        final long tail = tailSize(edgeTarget.limit(), outputCount, symbolBytes, precision);
+        for (long i = tail % 4; i > 0 && i < 4; i++) {
+            out.put((byte) 0);
+        }
+    }
+
+    /**
+     * The symbol ids are stored before the quantized probabilities unless the
+     * probabilities are wider.
+     */
+    private static boolean symbolsFirst(int symbolBytes, int precision) {
+        return precision == FLOAT_PRECISION || symbolBytes * 8 >= precision;
+    }
+
+    private static void putAll(ByteBuffer out, ByteBuffer values) {
+        for (int i = 0; i < values.limit(); i++) {
+            out.put(values.get(i));
+        }
+    }
+
+    /**
+     * Creates a trie which uses views into the given buffer as written by
+     * {@link #writeTo(ByteBuffer)}. Nothing is copied but the symbol table and
+     * the alphabet.
+     *
+     * @param order The order of the model.
+     * @param in    The little endian buffer positioned at the start of the trie.
+     * @return The trie backed by the buffer.
+     */
+    static ContextTrie readFrom(int order, ByteBuffer in) {
+        final int nodeCount = in.getInt();
+        final int edgeCount = in.getInt();
+        final int transitionCount = in.getInt();
+        final int outputCount = in.getInt();
+        final int alphabetCount = in.getInt();
+        final int precision = in.getInt();
+        final int delimiterTransition = in.getInt();
+        final int symbolCount = in.getInt();
+        if (nodeCount < 1 || edgeCount != nodeCount - 1 || transitionCount < 1 || outputCount < 0
+                || alphabetCount < 0 || delimiterTransition < 0 || delimiterTransition >= transitionCount
+                || (precision != 8 && precision != 16 && precision != FLOAT_PRECISION)) {
+            throw new IllegalArgumentException("The model file is corrupt.");
+        }
+        final IntBuffer firstChild = slice(in, nodeCount + 1, 4).asIntBuffer();
+        final IntBuffer edgeTarget = slice(in, edgeCount, 4).asIntBuffer();
+        final IntBuffer nodeTransition = slice(in, nodeCount, 4).asIntBuffer();
+        final IntBuffer firstOutput = slice(in, transitionCount + 1, 4).asIntBuffer();
+        final FloatBuffer outputCumulative = precision == FLOAT_PRECISION
+                ? slice(in, outputCount, 4).asFloatBuffer() : null;
+        final FloatBuffer transitionPrior = slice(in, transitionCount, 4).asFloatBuffer();
+        // The symbols and the alphabet are tiny, so they are copied to arrays.
+        final SymbolTable symbols = SymbolTable.readFrom(in, symbolCount);
+        final int[] alphabet = new int[alphabetCount];
+        slice(in, alphabetCount, 4).asIntBuffer().get(alphabet);
+        for (int letter : alphabet) {
+            if (letter <= SymbolTable.DELIMITER || letter >= symbolCount) {
+                throw new IllegalArgumentException("The model file is corrupt.");
+            }
+        }
+        final int symbolBytes = symbols.symbolBytes();
+        final boolean symbolsFirst = symbolsFirst(symbolBytes, precision);
+        ByteBuffer quantizedCumulative = null;
+        if (!symbolsFirst) {
+            quantizedCumulative = slice(in, outputCount, precision / 8);
+        }
+        final ByteBuffer edgeSymbol = slice(in, edgeCount, symbolBytes);
+        final ByteBuffer outputSymbol = slice(in, outputCount, symbolBytes);
+        if (symbolsFirst && precision < FLOAT_PRECISION) {
+            quantizedCumulative = slice(in, outputCount, precision / 8);
+        }
+        final long tail = tailSize(edgeCount, outputCount, symbolBytes, precision);
+        slice(in, (int) ((4 - tail % 4) % 4), 1);
+        return new ContextTrie(order, symbols, firstChild, edgeSymbol, edgeTarget, nodeTransition, firstOutput,
+                outputSymbol, outputCumulative, quantizedCumulative, precision, transitionPrior, alphabet,
+                delimiterTransition);
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int count, int size) {
+        final int bytes = count * size;
+        if (bytes > in.remaining()) {
+            throw new IllegalArgumentException("The model file is truncated.");
+        }
+        final ByteBuffer slice = in.slice();
+        slice.limit(bytes);
+        in.position(in.position() + bytes);
+        return slice.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Number of nodes inside the trie.
+     *
+     * @return The node count.
+     */
+    int size() {
+        return nodeTransition.limit();
+    }
+
+    /**
+     * Finds the transition of the longest known context preceding the given
+     * position of the text. Positions before the start of the text are treated
+     * as start symbols.
+     *
+     * @param text  The symbol ids of the generated text without any start symbols.
+     * @param start The position the text starts at.
+     * @param end   The position in the text whose preceding context is looked up.
+     * @return The id of the transition of the longest matching context.
+     */
+    int find(int[] text, int start, int end) {
+        return (int) findWithDepth(text, start, end);
+    }
+
+    /**
+     * Finds the transition of the longest suffix of a context. In contrast to
+     * {@link #find(int[], int, int)} the context is not padded with start
+     * symbols, it already contains them if it is the start of a name.
+     *
+     * @param context The context as it is keyed in the transitions.
+     * @return The id of the transition, the fallback if no suffix is known.
+     */
+    int findSuffix(CharSequence context) {
+        int found = fallback;
+        int node = 0;
+        for (int i = context.length(), depth = 0; i > 0 && depth < order; depth++) {
+            final int codePoint = Character.codePointBefore(context, i);
+            i -= Character.charCount(codePoint);
+            node = child(node, symbols.id(codePoint));
+            if (node < 0) {
+                break;
+            }
+            final int transition = nodeTransition.get(node);
+            if (transition != NO_TRANSITION) {
+                found = transition;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Like {@link #find(int[], int, int)}, but also returns the length of the
+     * found context.
+     *
+     * @param text  The symbol ids of the generated text without any start symbols.
+     * @param start The position the text starts at.
+     * @param end   The position in the text whose preceding context is looked up.
+     * @return The length of the context in the upper and the id of the transition in the lower 32 bits. The length
+     * is 0 if no context was found.
+     */
+    long findWithDepth(int[] text, int start, int end) {
+        int found = fallback;
+        int depth = 0;
+        int node = 0;
+        for (int i = 1; i <= order; i++) {
+            final int pos = end - i;
+            node = child(node, pos >= start ? text[pos] : SymbolTable.DELIMITER);
+            if (node < 0) {
+                break;
+            }
+            final int transition = nodeTransition.get(node);
+            if (transition != NO_TRANSITION) {
+                found = transition;
+                depth = i;
+            }
+        }
+        return (long) depth << 32 | found;
+    }
+
+    /**
+     * Finds the transition of the longest context preceding the given position
+     * which does not always end the name. If there is none, the transition
+     * of the start of a name is used, which never ends it.
+     *
+     * @param text  The symbol ids of the generated text without any start symbols.
+     * @param start The position the text starts at.
+     * @param end   The position in the text whose preceding context is looked up.
+     * @return The id of the transition of the longest context which can continue.
+     */
+    int findContinuing(int[] text, int start, int end) {
+        int found = -1;
+        int node = 0;
+        for (int i = 1; i <= order; i++) {
+            final int pos = end - i;
+            node = child(node, pos >= start ? text[pos] : SymbolTable.DELIMITER);
+            if (node < 0) {
+                break;
+            }
+            final int transition = nodeTransition.get(node);
+            if (transition != NO_TRANSITION && endProbability(transition) < 1f) {
+                found = transition;
+            }
+        }
+        return found >= 0 ? found : find(text, start, start);
+    }
+
+    /**
+     * The probability of the transition to end the name. It is read from the
+     * cumulative probabilities, so nothing has to be stored for it.
+     *
+     * @param transition The id of the transition.
+     * @return The probability of the end symbol.
+     */
+    float endProbability(int transition) {
+        final int index = outputIndex(transition, SymbolTable.DELIMITER);
+        if (index < 0) {
+            return 0f;
+        }
+        return outputProbability(transition, index);
+    }
+
+    /**
+     * Picks a symbol from the distribution of a transition as if the end
+     * symbol had a probability of 0. The position is scaled to the remaining
+     * probability and skips the interval of the end symbol.
+     *
+     * @param transition The id of the transition.
+     * @param position   A position in the probability distribution ∈ [0, 1.0).
+     * @return The id of the picked symbol, only the delimiter if the transition has nothing else.
+     */
+    int pickContinuing(int transition, float position) {
+        final int index = outputIndex(transition, SymbolTable.DELIMITER);
+        if (index < 0) {
+            return pick(transition, position);
+        }
+        final float before = index > firstOutput.get(transition) ? cumulative(index - 1) : 0f;
+        final float width = cumulative(index) - before;
+        float scaled = position * (1f - width);
+        if (scaled >= before) {
+            scaled += width;
+        }
+        final int picked = pick(transition, Math.min(scaled, Math.nextDown(1f)));
+        if (picked != SymbolTable.DELIMITER) {
+            return picked;
+        }
+        // Rounding landed on the end symbol, take its neighbour instead.
+        if (index + 1 < firstOutput.get(transition + 1)) {
+            return outputSymbol(index + 1);
+        }
+        return index > firstOutput.get(transition) ? outputSymbol(index - 1) : SymbolTable.DELIMITER;
+    }
+
+    /**
+     * Outputs are in the order of the distribution they were compiled from,
+     * which is not necessarily sorted, so they are scanned.
+     */
+    private int outputIndex(int transition, int symbol) {
+        final int end = firstOutput.get(transition + 1);
+        for (int i = firstOutput.get(transition); i < end; i++) {
+            if (outputSymbol(i) == symbol) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Deterministically picks a symbol from the distribution of a transition.
+     *
+     * @param transition The id of the transition.
+     * @param position   A position in the probability distribution ∈ [0, 1.0).
+     * @return The id of the picked symbol.
+     */
+    int pick(int transition, float position) {
+        int low = firstOutput.get(transition);
+        int high = firstOutput.get(transition + 1);
+        final float observed = high > low ? cumulative(high - 1) : 0f;
+        if (position < observed) {
+            // Find the first symbol whose cumulative probability exceeds the position.
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (cumulative(mid) > position) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return outputSymbol(low);
+        }
+        // Beyond the observations every letter of the alphabet has the same prior probability.
+        final float prior = transitionPrior.get(transition);
+        if (prior > 0) {
+            final int index = (int) ((position - observed) / prior);
+            if (index < alphabet.length) {
+                return alphabet[index];
+            }
+        }
+        final Metrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordPickError();
+        }
+        logger.error("Unable to find a position for {} in Transition ", position);
+        return SymbolTable.DELIMITER;
+    }
+
+    /**
+     * The probability of a transition to pick a symbol, which is its observed
+     * probability plus the prior if it is a letter of the alphabet.
+     *
+     * @param transition The id of the transition.
+     * @param symbol     The id of the symbol, the delimiter for the end of the name.
+     * @return The probability, 0 for {@link SymbolTable#UNKNOWN}.
+     */
+    float probability(int transition, int symbol) {
+        final int index = outputIndex(transition, symbol);
+        float probability = index >= 0 ? outputProbability(transition, index) : 0f;
+        final float prior = transitionPrior.get(transition);
+        if (prior > 0 && symbol != SymbolTable.DELIMITER && Arrays.binarySearch(alphabet, symbol) >= 0) {
+            probability += prior;
+        }
+        return probability;
+    }
+
+    /**
+     * @param transition The id of the transition.
+     * @return Index of the first observed output of the transition.
+     */
+    int firstOutput(int transition) {
+        return firstOutput.get(transition);
+    }
+
+    /**
+     * @param transition The id of the transition.
+     * @return Index after the last observed output of the transition.
+     */
+    int endOutput(int transition) {
+        return firstOutput.get(transition + 1);
+    }
+
+    /**
+     * @param output The index of an observed output.
+     * @return The id of the symbol of the output.
+     */
+    int outputSymbol(int output) {
+        return symbolBytes == 1 ? outputSymbol.get(output) & 0xff : outputSymbol.getChar(output * 2);
+    }
+
+    /**
+     * The observed probability of an output, without the prior its symbol
+     * might additionally get as a letter of the alphabet.
+     *
+     * @param transition The id of the transition the output belongs to.
+     * @param output     The index of the output.
+     * @return The probability.
+     */
+    float outputProbability(int transition, int output) {
+        return cumulative(output) - (output > firstOutput.get(transition) ? cumulative(output - 1) : 0f);
+    }
+
+    /**
+     * @param transition The id of the transition.
+     * @return The probability every letter of the alphabet gets in addition to its observations.
+     */
+    float prior(int transition) {
+        return transitionPrior.get(transition);
+    }
+
+    /**
+     * @return The ids of the letters the priors apply to, in ascending order. Must not be modified.
+     */
+    int[] alphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return The code points of the letters the priors apply to, in ascending order. Must not be modified.
+     */
+    int[] alphabetCodePoints() {
+        return alphabetCodePoints;
+    }
+
+    /**
+     * @return The id of the symbol which pads the start and marks the end of a name.
+     */
+    int delimiter() {
+        return SymbolTable.DELIMITER;
+    }
+
+    /**
+     * @return The symbols the ids of this trie refer to.
+     */
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private int child(int node, int symbol) {
+        int low = firstChild.get(node);
+        int high = firstChild.get(node + 1) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int edge = edgeSymbol(mid);
+            if (edge < symbol) {
+                low = mid + 1;
+            } else if (edge > symbol) {
+                high = mid - 1;
+            } else {
+                return edgeTarget.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    private int edgeSymbol(int edge) {
+        return symbolBytes == 1 ? edgeSymbol.get(edge) & 0xff : edgeSymbol.getChar(edge * 2);
+    }
+
+    /**
+     * Recreates the transition with the given id from its compiled
+     * distribution.
+     *
+     * @param transition The id of the transition.
+     * @return A new runtime transition.
+     */
+    Transition transition(int transition) {
+        final Map<String, Float> distribution = new LinkedHashMap<>();
+        float previous = 0f;
+        for (int i = firstOutput.get(transition); i < firstOutput.get(transition + 1); i++) {
+            final float cumulative = cumulative(i);
+            distribution.put(new String(Character.toChars(symbols.codePoint(outputSymbol(i)))),
+                    cumulative - previous);
+            previous = cumulative;
+        }
+        final Transition recreated = new Transition(distribution, transitionPrior.get(transition));
+        recreated.useAlphabet(alphabetCodePoints);
+        return recreated;
+    }
+
+    /**
+     * Recreates the transition which is used if no context at all is known.
+     *
+     * @return A new runtime transition.
+     */
+    Transition delimiterTransition() {
+        return transition(delimiterTransition);
+    }
+
+    /**
+     * A read only map of the contexts to their transitions. The transitions are
+     * recreated from the buffers whenever they are accessed, so this is meant
+     * for exporting a model and not for sampling.
+     *
+     * @return The map view.
+     */
+    Map<String, Transition> asMap() {
+        return new TransitionMap();
+    }
+
+    private final class TransitionMap extends AbstractMap<String, Transition> {
+
+        private int size = -1;
+
+        @Override
+        public Transition get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            final String context = (String) key;
+            if (context.codePointCount(0, context.length()) > order) {
+                return null;
+            }
+            int node = 0;
+            for (int i = context.length(); i > 0 && node >= 0; ) {
+                final int codePoint = context.codePointBefore(i);
+                i -= Character.charCount(codePoint);
+                node = child(node, symbols.id(codePoint));
+            }
+            if (node < 0 || nodeTransition.get(node) == NO_TRANSITION) {
+                return null;
+            }
+            return transition(nodeTransition.get(node));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Transition>> entrySet() {
+            return new AbstractSet<Entry<String, Transition>>() {
+                @Override
+                public Iterator<Entry<String, Transition>> iterator() {
+                    return new TransitionIterator();
+                }
+
+                @Override
+                public int size() {
+                    if (size < 0) {
+                        int count = 0;
+                        for (int i = 0; i < nodeTransition.limit(); i++) {
+                            if (nodeTransition.get(i) != NO_TRANSITION) {
+                                count++;
+                            }
+                        }
+                        size = count;
+                    }
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * Walks the trie depth first and keeps the reversed path to the current
+     * node, which is the context of the node.
+     */
+    private final class TransitionIterator implements Iterator<Map.Entry<String, Transition>> {
+
+        private final Deque<int[]> stack = new ArrayDeque<>();
+        private final int[] path = new int[order];
+        private Map.Entry<String, Transition> next;
+
+        private TransitionIterator() {
+            // Node id, depth and the symbol of the edge leading to the node.
+            stack.push(new int[]{0, 0, 0});
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !stack.isEmpty()) {
+                final int[] entry = stack.pop();
+                final int node = entry[0];
+                final int depth = entry[1];
+                if (depth > 0) {
+                    path[depth - 1] = entry[2];
+                }
+                for (int edge = firstChild.get(node + 1) - 1; edge >= firstChild.get(node); edge--) {
+                    if (depth < order) {
+                        stack.push(new int[]{edgeTarget.get(edge), depth + 1, edgeSymbol(edge)});
+                    }
+                }
+                if (nodeTransition.get(node) != NO_TRANSITION) {
+                    final StringBuilder context = new StringBuilder(depth);
+                    for (int i = depth - 1; i >= 0; i--) {
+                        context.appendCodePoint(symbols.codePoint(path[i]));
+                    }
+                    next = new AbstractMap.SimpleImmutableEntry<>(context.toString(),
+                            transition(nodeTransition.get(node)));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, Transition> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<String, Transition> current = next;
+            advance();
+            return current;
+        }
+    }
+
+    private static final class Node {
+        private final Map<Integer, Node> children = new TreeMap<>();
+        private Transition transition;
+    }
+}
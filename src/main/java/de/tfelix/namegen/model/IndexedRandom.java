@@ -0,0 +1,48 @@
+package de.tfelix.namegen.model;
+
+import java.util.Random;
+
+/**
+ * Random stream which only depends on a seed and an index, so the stream of
+ * any index can be created directly without drawing the streams of the
+ * indices before it. The start of the stream of an index is the index-th
+ * value of a SplitMix64 generator seeded with the seed, the stream itself is
+ * a SplitMix64 generator starting there.
+ * <p>
+ * An instance is reset for every index and reused, so it never touches the
+ * atomic seed of {@link Random}. It is not thread safe.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+final class IndexedRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    /**
+     * Starts the stream of the index.
+     *
+     * @param seed  The seed of the whole sequence.
+     * @param index The index within the sequence.
+     */
+    void reset(long seed, long index) {
+        state = mix(mix(seed) + (index + 1) * GAMMA);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (mix(state += GAMMA) >>> (64 - bits));
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
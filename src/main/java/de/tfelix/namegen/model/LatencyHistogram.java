@@ -0,0 +1,80 @@
+package de.tfelix.namegen.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with a relative precision of 1/8. Every power of
+ * two is split into eight linear buckets. Recording only increments a
+ * striped counter, so it can be done on every generated name.
+ *
+ * @author Thomas Felix
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final LongAdder[] buckets = new LongAdder[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        buckets[bucket(Math.max(0, nanos))].increment();
+    }
+
+    /**
+     * @param quantile The quantile, between 0 and 1.
+     * @return The upper bound of the bucket the quantile falls into, 0 if nothing was recorded.
+     */
+    long quantile(double quantile) {
+        final long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * Values below the number of sub buckets get a bucket each, bigger values
+     * share a bucket with the values which have the same highest bits.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long base = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return base + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,186 @@
+package de.tfelix.namegen.model;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A model which keeps learning while names are generated from it. New names
+ * are added to the underlying {@link MarkovModel} and only become visible
+ * once {@link #publish()} compiled a new snapshot. Snapshots are immutable
+ * {@link RuntimeModel}s which are swapped atomically, so generating names
+ * never waits for updates or publishing.
+ * <p>
+ * Publishing only rebuilds the transitions of the contexts which changed
+ * since the last snapshot, all other transitions are shared with it. Only
+ * this blocks {@link #update(CharSequence)}. The compiled lookup of the
+ * snapshot is not incremental though: every publication then copies the map
+ * of all transitions and compiles all contexts again without blocking
+ * updates, which takes time and memory in proportion to the whole model, not
+ * to the changes. {@link #setMinInterval(long, TimeUnit)} limits how often
+ * this happens.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public class LiveModel<R extends Random> implements Supplier<RuntimeModel<R>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveModel.class);
+
+    private final MarkovModel model;
+    private final Transition delimiterTransition;
+
+    /**
+     * Guards the model and the dirty contexts. Readers of the snapshot never
+     * take it.
+     */
+    private final Object lock = new Object();
+    private final BitSet dirty = new BitSet();
+
+    /**
+     * Guards the transitions of the last snapshot and the publication times,
+     * so only one publication compiles at a time. It is taken before the
+     * lock.
+     */
+    private final Object publishLock = new Object();
+    private Map<String, Transition> transitions = new HashMap<>();
+    private long minIntervalNanos;
+    private long lastPublish;
+    private final AtomicReference<RuntimeModel<R>> snapshot = new AtomicReference<>();
+
+    /**
+     * Creates a live model which continues learning on the given model. The
+     * first snapshot contains all the observations the model has so far. The
+     * model must not be updated directly afterwards.
+     *
+     * @param model The model to continue learning on.
+     */
+    public LiveModel(MarkovModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("model can not be null.");
+        }
+        this.model = model;
+        this.delimiterTransition = model.buildDelimiterTransition();
+        synchronized (lock) {
+            dirty.set(1, model.contextCount());
+        }
+        publish();
+    }
+
+    /**
+     * Learns a new name. It is used for generating after the next
+     * {@link #publish()}.
+     *
+     * @param name The name to learn.
+     */
+    public void update(CharSequence name) {
+        synchronized (lock) {
+            model.update(name, dirty);
+        }
+    }
+
+    /**
+     * Sets the minimal time between two publications, so a big model is not
+     * compiled again for every few learned names. Zero by default.
+     *
+     * @param interval Minimal time between two publications.
+     * @param unit     Unit of the interval.
+     */
+    public void setMinInterval(long interval, TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("interval must not be negative.");
+        }
+        synchronized (publishLock) {
+            minIntervalNanos = unit.toNanos(interval);
+        }
+    }
+
+    /**
+     * Compiles a new snapshot with the changed contexts and publishes it. If
+     * nothing changed or the last publication is more recent than the
+     * {@link #setMinInterval(long, TimeUnit) minimal interval}, the current
+     * snapshot is kept and the changes are published by a later call.
+     *
+     * @return The current snapshot.
+     */
+    public RuntimeModel<R> publish() {
+        synchronized (publishLock) {
+            final RuntimeModel<R> current = snapshot.get();
+            final long start = System.nanoTime();
+            if (current != null && start - lastPublish < minIntervalNanos) {
+                return current;
+            }
+            final Map<String, Transition> changed = new HashMap<>();
+            synchronized (lock) {
+                if (current != null && dirty.isEmpty()) {
+                    return current;
+                }
+                for (int context = dirty.nextSetBit(0); context >= 0; context = dirty.nextSetBit(context + 1)) {
+                    changed.put(model.context(context), model.build(context));
+                }
+                dirty.clear();
+            }
+            // Built transitions are never changed, so the next snapshot shares all unchanged ones.
+            final Map<String, Transition> next = new HashMap<>(transitions);
+            next.putAll(changed);
+            transitions = next;
+            final RuntimeModel<R> published = new RuntimeModel<>(model.getOrder(), model.getLocale(),
+                    next, delimiterTransition);
+            snapshot.set(published);
+            lastPublish = System.nanoTime();
+            logger.debug("Published snapshot in {} ms, rebuilt {} changed contexts and compiled all {}.",
+                    (lastPublish - start) / 1000000, changed.size(), next.size());
+            return published;
+        }
+    }
+
+    /**
+     * Publishes the changes periodically on the executor. Every publication
+     * compiles the whole model, so the period should be much longer than
+     * compiling it takes.
+     *
+     * @param executor The executor to publish on.
+     * @param period   Time between two publications.
+     * @param unit     Unit of the period.
+     * @return The scheduled publishing, cancel it to stop.
+     */
+    public ScheduledFuture<?> publishEvery(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive.");
+        }
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                publish();
+            } catch (RuntimeException e) {
+                // A failed publication must not stop the following ones.
+                logger.error("Publishing the model failed.", e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * @return True if names were learned which are not published yet.
+     */
+    public boolean isDirty() {
+        synchronized (lock) {
+            return !dirty.isEmpty();
+        }
+    }
+
+    /**
+     * @return The last published snapshot. This never blocks.
+     */
+    @Override
+    public RuntimeModel<R> get() {
+        return snapshot.get();
+    }
+}
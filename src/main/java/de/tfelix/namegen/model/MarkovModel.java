@@ -2,6 +2,7 @@ package de.tfelix.namegen.model;
 
 import com.ibm.icu.util.ULocale;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,10 +19,9 @@ public class MarkovModel implements TrainableModel {
 
     private final int order;
     private final float prior;
-    private final String prefix;
     private final char postfix;
     private final ULocale locale;
-    private final Map<String, Transition> transitions;
+    private final ContextCounts counts;
 
     /**
      * Creates a new Markov model. The order is how many characters are taken
@@ -49,45 +49,114 @@ public class MarkovModel implements TrainableModel {
         this.order = order;
         this.prior = prior;
 
-        this.prefix = SymbolManager.getStartSymbol(order);
         this.postfix = SymbolManager.getEndSymbol();
         this.locale = locale;
-        this.transitions = new HashMap<>();
+        this.counts = new ContextCounts(order);
     }
 
     /*
      * (non-Javadoc)
      *
-     * @see de.tfelix.namegen.model.TrainableModel#update(java.lang.String)
+     * @see de.tfelix.namegen.model.TrainableModel#update(java.lang.CharSequence)
      */
     @Override
-    public void update(String line) {
-        line = prefix + line + postfix;
-        for (int i = order; i < line.length(); i++) {
-            String context = line.substring(i - order, i);
-            char output = line.charAt(i);  // line[i] should be typically output in this context
-            for (int j = 0; j < context.length(); j++) {
-                String subContext = context.substring(j);
-                if (this.transitions.containsKey(subContext)) {
-                    transitions.get(subContext).update(output);
-                } else {
-                    Transition transition = new Transition(this.prior, locale);
-                    transition.update(output);
-                    transitions.put(subContext, transition);
-                }
-            }
+    public void update(CharSequence name) {
+        update(name, null);
+    }
+
+    /**
+     * Updates the model and collects the contexts whose counts changed.
+     *
+     * @param name    The name to learn.
+     * @param touched Receives the id of every changed context, may be null.
+     */
+    void update(CharSequence name, BitSet touched) {
+        counts.update(name, touched);
+    }
+
+    @Override
+    public TrainableModel createEmpty() {
+        return new MarkovModel(order, prior, locale);
+    }
+
+    @Override
+    public void merge(TrainableModel other) {
+        if (!(other instanceof MarkovModel)) {
+            throw new IllegalArgumentException("Only a MarkovModel can be merged into a MarkovModel.");
         }
+        final MarkovModel model = (MarkovModel) other;
+        if (model.order != order || model.prior != prior || !locale.equals(model.locale)) {
+            throw new IllegalArgumentException("Models with different order, prior or locale can not be merged.");
+        }
+        counts.merge(model.counts);
     }
 
     @Override
     public RuntimeModel build() {
         Map<String, Transition> builtTransitions = new HashMap<>();
-        for (String key : transitions.keySet()) {
-            builtTransitions.put(key, transitions.get(key).build());
+        for (int context = 1; context < counts.nodeCount(); context++) {
+            builtTransitions.put(counts.context(context), counts.build(context, prior, locale));
+        }
+        return new RuntimeModel(this.order, this.locale, builtTransitions, buildDelimiterTransition());
+    }
+
+    @Override
+    public RuntimeModel build(Pruning pruning) {
+        if (pruning == Pruning.NONE) {
+            return build();
+        }
+        final BitSet kept = counts.select(pruning);
+        Map<String, Transition> builtTransitions = new HashMap<>();
+        for (int context = kept.nextSetBit(0); context >= 0; context = kept.nextSetBit(context + 1)) {
+            builtTransitions.put(counts.context(context), counts.build(context, prior, locale));
         }
+        return new RuntimeModel(this.order, this.locale, builtTransitions, buildDelimiterTransition());
+    }
+
+    @Override
+    public PruningReport report(Pruning pruning) {
+        return counts.report(counts.select(pruning));
+    }
+
+    /**
+     * @return The number of context ids, the ids of the observed contexts are 1 to this exclusive.
+     */
+    int contextCount() {
+        return counts.nodeCount();
+    }
+
+    /**
+     * @param context The id of an observed context.
+     * @return The context.
+     */
+    String context(int context) {
+        return counts.context(context);
+    }
+
+    /**
+     * Builds the runtime transition of a single context.
+     *
+     * @param context The id of an observed context.
+     * @return The runtime transition.
+     */
+    Transition build(int context) {
+        return counts.build(context, prior, locale);
+    }
+
+    /**
+     * @return The transition used when no context is known, it always ends the name.
+     */
+    Transition buildDelimiterTransition() {
         Transition transition = new Transition(0f, locale);
         transition.update(this.postfix);
-        Transition delimiterTransition = transition.build();
-        return new RuntimeModel(this.order, this.locale, builtTransitions, delimiterTransition);
+        return transition.build();
+    }
+
+    int getOrder() {
+        return order;
+    }
+
+    ULocale getLocale() {
+        return locale;
     }
 }
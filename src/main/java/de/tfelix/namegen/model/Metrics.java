@@ -0,0 +1,197 @@
+package de.tfelix.namegen.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the models are doing while names are generated and trained.
+ * All counters are striped, and a generated name updates them only once, so
+ * the metrics are cheap enough to stay enabled in production. One instance
+ * can be shared by multiple models to aggregate them.
+ * <p>
+ * The metrics can be read directly or registered as a platform MXBean.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public final class Metrics implements MetricsMXBean {
+
+    private final LongAdder names = new LongAdder();
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder backoffs = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder pickErrors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder trainedNames = new LongAdder();
+    private final LongAdder trainedChars = new LongAdder();
+    private final LongAdder trainingNanos = new LongAdder();
+
+    private ObjectName registeredName;
+
+    /**
+     * Records a generated name.
+     *
+     * @param steps     Number of sampled characters.
+     * @param backoffs  Number of samples from a shorter context than the order.
+     * @param fallbacks Number of samples without any known context.
+     * @param nanos     Time it took to generate the name.
+     */
+    void recordName(int steps, int backoffs, int fallbacks, long nanos) {
+        this.names.increment();
+        this.steps.add(steps);
+        if (backoffs > 0) {
+            this.backoffs.add(backoffs);
+        }
+        if (fallbacks > 0) {
+            this.fallbacks.add(fallbacks);
+        }
+        latency.record(nanos);
+    }
+
+    void recordPickError() {
+        pickErrors.increment();
+    }
+
+    /**
+     * Records names a model was trained with.
+     *
+     * @param names Number of names.
+     * @param chars Number of characters of the names.
+     * @param nanos Time it took to train them.
+     */
+    public void recordTraining(long names, long chars, long nanos) {
+        trainedNames.add(names);
+        trainedChars.add(chars);
+        trainingNanos.add(nanos);
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server.
+     *
+     * @param name Distinguishes multiple registered metrics, e.g. the id of the model.
+     * @throws IllegalArgumentException if the metrics can not be registered, e.g. the name is taken.
+     */
+    public synchronized void register(String name) {
+        if (registeredName != null) {
+            throw new IllegalArgumentException("The metrics are already registered.");
+        }
+        try {
+            final ObjectName objectName = new ObjectName("de.tfelix.namegen:type=Metrics,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException(String.format("Could not register metrics %s.", name), e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server if they are registered.
+     */
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(registeredName);
+        } catch (JMException e) {
+            // Somebody else unregistered it already.
+        }
+        registeredName = null;
+    }
+
+    @Override
+    public long getNames() {
+        return names.sum();
+    }
+
+    @Override
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    @Override
+    public double getAverageSteps() {
+        final long count = names.sum();
+        return count == 0 ? 0 : (double) steps.sum() / count;
+    }
+
+    @Override
+    public long getBackoffs() {
+        return backoffs.sum();
+    }
+
+    @Override
+    public double getBackoffRate() {
+        final long count = steps.sum();
+        return count == 0 ? 0 : (double) backoffs.sum() / count;
+    }
+
+    @Override
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public long getPickErrors() {
+        return pickErrors.sum();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return latency.quantile(0.5);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return latency.quantile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return latency.quantile(0.999);
+    }
+
+    @Override
+    public long getTrainedNames() {
+        return trainedNames.sum();
+    }
+
+    @Override
+    public long getTrainedChars() {
+        return trainedChars.sum();
+    }
+
+    @Override
+    public double getTrainedNamesPerSecond() {
+        final long nanos = trainingNanos.sum();
+        return nanos == 0 ? 0 : trainedNames.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public void reset() {
+        names.reset();
+        steps.reset();
+        backoffs.reset();
+        fallbacks.reset();
+        pickErrors.reset();
+        latency.reset();
+        trainedNames.reset();
+        trainedChars.reset();
+        trainingNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Metrics: %d names, %.2f steps per name, %.2f%% backoffs, %d fallbacks, %d pick errors, "
+                        + "latency p50 %d ns, p99 %d ns, %d names trained at %.0f names/s",
+                getNames(), getAverageSteps(), getBackoffRate() * 100, getFallbacks(), getPickErrors(),
+                getLatencyP50Nanos(), getLatencyP99Nanos(), getTrainedNames(), getTrainedNamesPerSecond());
+    }
+}
@@ -0,0 +1,65 @@
+package de.tfelix.namegen.model;
+
+/**
+ * Management interface of {@link Metrics}, so the metrics can be watched with
+ * any JMX client.
+ *
+ * @author Thomas Felix
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return Number of generated names.
+     */
+    long getNames();
+
+    /**
+     * @return Number of sampled characters including the end symbols.
+     */
+    long getSteps();
+
+    double getAverageSteps();
+
+    /**
+     * @return Number of samples which used a shorter context than the order of the model.
+     */
+    long getBackoffs();
+
+    /**
+     * @return Share of the samples which used a shorter context than the order of the model.
+     */
+    double getBackoffRate();
+
+    /**
+     * @return Number of samples for which no context was known at all.
+     */
+    long getFallbacks();
+
+    /**
+     * @return Number of samples whose position was outside of the distribution.
+     */
+    long getPickErrors();
+
+    long getLatencyP50Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyP999Nanos();
+
+    /**
+     * @return Number of names the model was trained with.
+     */
+    long getTrainedNames();
+
+    /**
+     * @return Number of characters the model was trained with.
+     */
+    long getTrainedChars();
+
+    double getTrainedNamesPerSecond();
+
+    /**
+     * Sets all metrics back to 0.
+     */
+    void reset();
+}
@@ -0,0 +1,156 @@
+package de.tfelix.namegen.model;
+
+import com.ibm.icu.util.ULocale;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Blends several models into a single one, e.g. 70% of a German and 30% of a
+ * Finnish model. The distribution of every context of the blended model is
+ * the weighted mixture of the distributions the models use for that context,
+ * so the letters of a name are drawn from the mixture one by one and the
+ * styles blend within a name. Generating from the blended model costs the
+ * same as generating from a single model.
+ * <p>
+ * The contexts are aligned across the models: the blended model knows the
+ * contexts of all models, and a model which does not know a context
+ * contributes the distribution of the longest suffix it backs off to. As the
+ * blended model backs off to the longest known suffix as well, every letter
+ * has exactly the probability of sampling from the weighted models.
+ * </p>
+ * <p>
+ * The blended model uses the locale of the first model. The prior of a
+ * model whose alphabet lacks some of its letters is added to the observed
+ * probabilities of the letters the model has, as are the letters of a bigger
+ * alphabet which the first model lacks. So the letters of every locale keep
+ * their weight.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public final class ModelInterpolation {
+
+    private final List<RuntimeModel<?>> models = new ArrayList<>();
+    private final List<Double> weights = new ArrayList<>();
+
+    /**
+     * Adds a model to the blend.
+     *
+     * @param model  The model.
+     * @param weight The weight of the model, relative to the weights of the other models.
+     * @return This interpolation.
+     */
+    public ModelInterpolation add(RuntimeModel<?> model, double weight) {
+        if (model == null) {
+            throw new IllegalArgumentException("model can not be null.");
+        }
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weight must be a positive number.");
+        }
+        models.add(model);
+        weights.add(weight);
+        return this;
+    }
+
+    /**
+     * Builds the model and adds it to the blend.
+     *
+     * @param model  The trained model.
+     * @param weight The weight of the model, relative to the weights of the other models.
+     * @return This interpolation.
+     */
+    public ModelInterpolation add(TrainableModel model, double weight) {
+        if (model == null) {
+            throw new IllegalArgumentException("model can not be null.");
+        }
+        return add(model.build(), weight);
+    }
+
+    /**
+     * Compiles the blended model. Its order is the highest order of the
+     * models.
+     *
+     * @param <R> The type of random number generator the model is used with.
+     * @return The blended model.
+     */
+    public <R extends Random> RuntimeModel<R> build() {
+        if (models.isEmpty()) {
+            throw new IllegalStateException("At least one model must be added.");
+        }
+        final ULocale locale = new ULocale(models.get(0).language_code);
+        final int[] alphabet = Alphabet.of(locale);
+        final int count = models.size();
+        final ContextTrie[] tries = new ContextTrie[count];
+        final double[] weights = new double[count];
+        final boolean[] coversAlphabet = new boolean[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += this.weights.get(i);
+        }
+        int order = 0;
+        final Set<String> contexts = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            final RuntimeModel<?> model = models.get(i);
+            tries[i] = model.getContexts();
+            weights[i] = this.weights.get(i) / sum;
+            coversAlphabet[i] = containsAll(tries[i].alphabetCodePoints(), alphabet);
+            order = Math.max(order, model.order);
+            contexts.addAll(model.transitions.keySet());
+        }
+
+        final Map<String, Transition> transitions = new HashMap<>();
+        for (String context : contexts) {
+            final Map<String, Float> distribution = new TreeMap<>();
+            double prior = 0;
+            for (int i = 0; i < count; i++) {
+                final ContextTrie trie = tries[i];
+                final SymbolTable symbols = trie.symbols();
+                final int transition = trie.findSuffix(context);
+                for (int output = trie.firstOutput(transition); output < trie.endOutput(transition); output++) {
+                    add(distribution, symbols.codePoint(trie.outputSymbol(output)),
+                            weights[i] * trie.outputProbability(transition, output));
+                }
+                final float modelPrior = trie.prior(transition);
+                if (modelPrior <= 0) {
+                    continue;
+                }
+                if (coversAlphabet[i]) {
+                    prior += weights[i] * modelPrior;
+                }
+                for (int letter : trie.alphabetCodePoints()) {
+                    if (!coversAlphabet[i] || Arrays.binarySearch(alphabet, letter) < 0) {
+                        add(distribution, letter, weights[i] * modelPrior);
+                    }
+                }
+            }
+            transitions.put(context, new Transition(distribution, (float) prior));
+        }
+
+        final Map<String, Float> end = new TreeMap<>();
+        end.put(SymbolManager.getEndSymbol().toString(), 1f);
+        return new RuntimeModel<>(order, locale, transitions, new Transition(end, 0f));
+    }
+
+    private static boolean containsAll(int[] letters, int[] alphabet) {
+        for (int letter : alphabet) {
+            if (Arrays.binarySearch(letters, letter) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(Map<String, Float> distribution, int codePoint, double probability) {
+        final String symbol = new String(Character.toChars(codePoint));
+        final Float previous = distribution.get(symbol);
+        distribution.put(symbol, (float) (previous == null ? probability : previous + probability));
+    }
+}
@@ -0,0 +1,82 @@
+package de.tfelix.namegen.model;
+
+/**
+ * Bounds for generating a name. The prefix seeds the context the name is
+ * generated from, the suffix is appended once the model ends the name. The
+ * length includes prefix and suffix and counts code points, so a
+ * supplementary character like an emoji is a single character.
+ * <p>
+ * As the maximal length is a hard limit, generating a constrained name takes
+ * at most that many samples, no matter how unlikely the constraints are for
+ * the model.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public final class NameConstraints {
+
+    /**
+     * Largest allowed maximal length of a name.
+     */
+    public static final int MAX_LENGTH = 1024;
+
+    private final int minLength;
+    private final int maxLength;
+    private final String prefix;
+    private final String suffix;
+
+    /**
+     * @param minLength Minimal length of the name.
+     * @param maxLength Maximal length of the name, at most {@value #MAX_LENGTH}.
+     * @param prefix    The name starts with this, may be empty.
+     * @param suffix    The name ends with this, may be empty.
+     */
+    public NameConstraints(int minLength, int maxLength, String prefix, String suffix) {
+        if (prefix == null || suffix == null) {
+            throw new IllegalArgumentException("prefix and suffix can not be null.");
+        }
+        if (minLength < 0 || maxLength < minLength) {
+            throw new IllegalArgumentException("Lengths must satisfy 0 <= minLength <= maxLength.");
+        }
+        if (maxLength > MAX_LENGTH) {
+            throw new IllegalArgumentException(String.format("maxLength must not be bigger than %d.", MAX_LENGTH));
+        }
+        if (prefix.codePointCount(0, prefix.length()) + suffix.codePointCount(0, suffix.length()) > maxLength) {
+            throw new IllegalArgumentException("prefix and suffix are longer than maxLength.");
+        }
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * @param minLength Minimal length of the name.
+     * @param maxLength Maximal length of the name, at most {@value #MAX_LENGTH}.
+     */
+    public NameConstraints(int minLength, int maxLength) {
+        this(minLength, maxLength, "", "");
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NameConstraints: length %d to %d, prefix '%s', suffix '%s'",
+                minLength, maxLength, prefix, suffix);
+    }
+}
@@ -0,0 +1,170 @@
+package de.tfelix.namegen.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the most probable names of a model with a best-first search. Partial
+ * names are expanded in the order of their probability, and as extending a
+ * name never makes it more probable, complete names come out of the queue in
+ * descending order of their probability. A partial name which is less
+ * probable than the k-th best complete name found so far can not become one
+ * of the best k names and is dropped.
+ * <p>
+ * The number of expanded partial names is limited. Models whose names barely
+ * ever end may reach the limit, then fewer names are returned.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+final class NameSearch {
+
+    static final int DEFAULT_MAX_EXPANSIONS = 1000000;
+
+    private final ContextTrie contexts;
+    private final int order;
+    private final int minLength;
+    private final int maxLength;
+    private final int[] context;
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(
+            Comparator.comparingDouble((Entry entry) -> entry.logProbability).reversed());
+    /**
+     * Min heap of the probabilities of the best complete names found so far.
+     */
+    private final PriorityQueue<Double> best = new PriorityQueue<>();
+    private int k;
+
+    /**
+     * @param contexts  The compiled model.
+     * @param order     The order of the model.
+     * @param minLength Minimal length of the names.
+     * @param maxLength Maximal length of the names.
+     */
+    NameSearch(ContextTrie contexts, int order, int minLength, int maxLength) {
+        this.contexts = contexts;
+        this.order = order;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.context = new int[order];
+    }
+
+    /**
+     * Searches the most probable names. An instance can only search once.
+     *
+     * @param k             Number of names to find.
+     * @param maxExpansions Maximal number of partial names to expand.
+     * @return At most k names in descending order of their probability.
+     */
+    List<ScoredName> search(int k, int maxExpansions) {
+        this.k = k;
+        final List<ScoredName> names = new ArrayList<>(Math.min(k, 1024));
+        queue.add(new Entry(null, SymbolTable.DELIMITER, 0, 0, false));
+        int expansions = 0;
+        while (!queue.isEmpty() && names.size() < k && expansions < maxExpansions) {
+            final Entry entry = queue.poll();
+            if (entry.complete) {
+                names.add(new ScoredName(entry.text(contexts.symbols()), entry.logProbability));
+            } else if (!isPruned(entry.logProbability)) {
+                expand(entry);
+                expansions++;
+            }
+        }
+        return names;
+    }
+
+    private void expand(Entry entry) {
+        int known = 0;
+        for (Entry e = entry; known < order && e.length > 0; e = e.parent) {
+            context[order - 1 - known++] = e.symbol;
+        }
+        final int transition = contexts.find(context, order - known, order);
+        final float prior = contexts.prior(transition);
+        final int[] alphabet = contexts.alphabet();
+        final int first = contexts.firstOutput(transition);
+        final int end = contexts.endOutput(transition);
+        for (int i = first; i < end; i++) {
+            final int symbol = contexts.outputSymbol(i);
+            float probability = contexts.outputProbability(transition, i);
+            if (prior > 0 && Arrays.binarySearch(alphabet, symbol) >= 0) {
+                probability += prior;
+            }
+            offer(entry, symbol, probability);
+        }
+        if (prior > 0) {
+            for (int letter : alphabet) {
+                if (!observed(first, end, letter)) {
+                    offer(entry, letter, prior);
+                }
+            }
+        }
+    }
+
+    private boolean observed(int first, int end, int symbol) {
+        for (int i = first; i < end; i++) {
+            if (contexts.outputSymbol(i) == symbol) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void offer(Entry parent, int symbol, float probability) {
+        if (probability <= 0) {
+            return;
+        }
+        final double logProbability = parent.logProbability + Math.log(probability);
+        if (isPruned(logProbability)) {
+            return;
+        }
+        if (symbol == contexts.delimiter()) {
+            if (parent.length >= minLength) {
+                queue.add(new Entry(parent.parent, parent.symbol, parent.length, logProbability, true));
+                best.add(logProbability);
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+        } else if (parent.length < maxLength) {
+            queue.add(new Entry(parent, symbol, parent.length + 1, logProbability, false));
+        }
+    }
+
+    private boolean isPruned(double logProbability) {
+        return best.size() == k && logProbability < best.peek();
+    }
+
+    /**
+     * A name in the queue. Partial names share their prefix with the name
+     * they were expanded from.
+     */
+    private static final class Entry {
+        private final Entry parent;
+        private final int symbol;
+        private final int length;
+        private final double logProbability;
+        private final boolean complete;
+
+        private Entry(Entry parent, int symbol, int length, double logProbability, boolean complete) {
+            this.parent = parent;
+            this.symbol = symbol;
+            this.length = length;
+            this.logProbability = logProbability;
+            this.complete = complete;
+        }
+
+        private String text(SymbolTable symbols) {
+            final int[] text = new int[length];
+            Entry e = this;
+            for (int i = length - 1; i >= 0; i--) {
+                text[i] = e.symbol;
+                e = e.parent;
+            }
+            final char[] chars = new char[length * 2];
+            return new String(chars, 0, symbols.decode(text, 0, length, chars, 0));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.tfelix.namegen.model;
+
+/**
+ * Decides which contexts of a {@link MarkovModel} are kept when it is built.
+ * High order models contain a lot of contexts which were only observed once
+ * and predict nearly the same as their shorter suffix. Removing them shrinks
+ * the model a lot while the generated names barely change, as the shorter
+ * context is used instead.
+ * <p>
+ * Contexts of length 1 are always kept, so every character has a
+ * distribution to continue from.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+public final class Pruning {
+
+    /**
+     * Keeps every context.
+     */
+    public static final Pruning NONE = new Pruning(1, Integer.MAX_VALUE, 0);
+
+    private final int minCount;
+    private final int maxContextsPerOrder;
+    private final double entropyThreshold;
+
+    /**
+     * @param minCount            Contexts observed less often are removed. 1 keeps all.
+     * @param maxContextsPerOrder Maximum number of contexts of every length, the ones which change the predictions
+     *                            the least are removed first.
+     * @param entropyThreshold    Contexts are removed if the relative entropy between their distribution and the
+     *                            one of the context used instead, weighted by how often they were observed, is below
+     *                            this threshold in bits. 0 keeps all.
+     */
+    public Pruning(int minCount, int maxContextsPerOrder, double entropyThreshold) {
+        if (minCount < 1) {
+            throw new IllegalArgumentException("minCount must be at least 1.");
+        }
+        if (maxContextsPerOrder < 1) {
+            throw new IllegalArgumentException("maxContextsPerOrder must be at least 1.");
+        }
+        if (entropyThreshold < 0 || Double.isNaN(entropyThreshold)) {
+            throw new IllegalArgumentException("entropyThreshold must not be negative.");
+        }
+        this.minCount = minCount;
+        this.maxContextsPerOrder = maxContextsPerOrder;
+        this.entropyThreshold = entropyThreshold;
+    }
+
+    public int getMinCount() {
+        return minCount;
+    }
+
+    public int getMaxContextsPerOrder() {
+        return maxContextsPerOrder;
+    }
+
+    public double getEntropyThreshold() {
+        return entropyThreshold;
+    }
+
+    /**
+     * @return True if the relative entropy of the contexts is needed to decide which are kept.
+     */
+    boolean ranksContexts() {
+        return entropyThreshold > 0 || maxContextsPerOrder < Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pruning: min count %d, max %d contexts per order, entropy threshold %g",
+                minCount, maxContextsPerOrder, entropyThreshold);
+    }
+}
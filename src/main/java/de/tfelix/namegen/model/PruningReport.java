@@ -0,0 +1,79 @@
+package de.tfelix.namegen.model;
+
+import java.util.Arrays;
+
+/**
+ * Describes how much a {@link Pruning} shrinks a model and what it costs. The
+ * quality is measured on the training names: the cross entropy is the average
+ * number of bits the unpruned model needs per predicted character, the
+ * entropy loss is how many bits per character the pruned model needs more.
+ *
+ * @author Thomas Felix
+ */
+public final class PruningReport {
+
+    private final int[] contextsBefore;
+    private final int[] contextsAfter;
+    private final double crossEntropy;
+    private final double entropyLoss;
+
+    PruningReport(int[] contextsBefore, int[] contextsAfter, double crossEntropy, double entropyLoss) {
+        this.contextsBefore = contextsBefore;
+        this.contextsAfter = contextsAfter;
+        this.crossEntropy = crossEntropy;
+        this.entropyLoss = entropyLoss;
+    }
+
+    /**
+     * @param length Length of the contexts, between 1 and the order of the model.
+     * @return Number of contexts of this length before pruning.
+     */
+    public int getContextsBefore(int length) {
+        return contextsBefore[length];
+    }
+
+    /**
+     * @param length Length of the contexts, between 1 and the order of the model.
+     * @return Number of contexts of this length which are kept.
+     */
+    public int getContextsAfter(int length) {
+        return contextsAfter[length];
+    }
+
+    public int getTotalContextsBefore() {
+        return Arrays.stream(contextsBefore).sum();
+    }
+
+    public int getTotalContextsAfter() {
+        return Arrays.stream(contextsAfter).sum();
+    }
+
+    /**
+     * @return Bits per character the unpruned model needs for the training names.
+     */
+    public double getCrossEntropy() {
+        return crossEntropy;
+    }
+
+    /**
+     * @return Bits per character the pruned model needs more than the unpruned one.
+     */
+    public double getEntropyLoss() {
+        return entropyLoss;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder perOrder = new StringBuilder();
+        for (int length = 1; length < contextsBefore.length; length++) {
+            if (length > 1) {
+                perOrder.append(", ");
+            }
+            perOrder.append(length).append(": ").append(contextsAfter[length]).append('/')
+                    .append(contextsBefore[length]);
+        }
+        return String.format("Kept %d of %d contexts (%s), %.4f bits per character, %.4f more than unpruned.",
+                getTotalContextsAfter(), getTotalContextsBefore(), perOrder, crossEntropy + entropyLoss,
+                entropyLoss);
+    }
+}
@@ -4,19 +4,39 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.ibm.icu.util.ULocale;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 public class RuntimeModel<R extends Random> implements Function<R, String> {
+
+    /**
+     * Per thread buffer the names are generated into. It grows to the longest generated name and is then reused, so
+     * generating does not allocate anything besides the optional resulting string.
+     */
+    private static final ThreadLocal<NameBuffer> BUFFER = ThreadLocal.withInitial(NameBuffer::new);
+
     /**
      * JSON serialization requires properties to be public :(
      */
     public final int order;
     public String language_code;
-    private final String prefix;
     public final Map<String, Transition> transitions;
     public final Transition delimiterTransition;
+    /**
+     * Compiled lookup of the transitions. It is built once from the transitions, so these must not be changed
+     * afterwards.
+     */
+    private final ContextTrie contexts;
+
+    /**
+     * Receives what happens while generating, may be null.
+     */
+    private volatile Metrics metrics;
 
     public RuntimeModel(
             int order,
@@ -27,8 +47,59 @@ public class RuntimeModel<R extends Random> implements Function<R, String> {
         this.language_code = locale.toString();
         this.order = order;
         this.transitions = transitions;
-        this.prefix = SymbolManager.getStartSymbol(order);
         this.delimiterTransition = delimiterTransition;
+        final int[] alphabet = Alphabet.of(locale);
+        for (Transition transition : transitions.values()) {
+            transition.useAlphabet(alphabet);
+        }
+        delimiterTransition.useAlphabet(alphabet);
+        this.contexts = ContextTrie.compile(order, transitions, delimiterTransition, alphabet);
+    }
+
+    /**
+     * Creates a model from an already compiled trie, e.g. one which is backed by
+     * a memory mapped file. The transitions are a view which recreates them
+     * from the trie on access.
+     *
+     * @param order         Order of the model.
+     * @param language_code The locale of the model.
+     * @param contexts      The compiled contexts.
+     */
+    RuntimeModel(int order, String language_code, ContextTrie contexts) {
+        this.language_code = language_code;
+        this.order = order;
+        this.transitions = contexts.asMap();
+        this.delimiterTransition = contexts.delimiterTransition();
+        this.contexts = contexts;
+    }
+
+    /**
+     * Creates a copy of this model whose cumulative probabilities are stored
+     * with fewer bits. This shrinks the model in memory and in the binary
+     * format, rarely observed characters might not be generated anymore.
+     *
+     * @param bits Number of bits of a probability, 8 or 16.
+     * @return The quantized model.
+     */
+    public RuntimeModel<R> quantize(int bits) {
+        return new RuntimeModel<>(order, language_code, contexts.quantize(bits));
+    }
+
+    /**
+     * Starts or stops recording metrics of the generated names.
+     *
+     * @param metrics The metrics to record to, null to stop recording.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        contexts.setMetrics(metrics);
+    }
+
+    /**
+     * @return The compiled contexts of this model.
+     */
+    ContextTrie getContexts() {
+        return contexts;
     }
 
     @JsonCreator
@@ -40,51 +111,123 @@ public class RuntimeModel<R extends Random> implements Function<R, String> {
     }
 
     /**
-     * The leading text is transformed so it is usable. It gets appended or
-     * shortened so that a categorical exists.
+     * Generates the symbol ids of the name into the buffer. The name is sampled
+     * symbol by symbol until the end symbol is drawn. The already generated
+     * symbols in the buffer are the rolling context of the next sample.
      *
-     * @param context The context string.
-     * @return A prepared context string.
+     * @param rand   A instance of a random number generator.
+     * @param buffer The buffer to generate the name into.
+     * @return The number of generated symbols without the end symbol.
      */
-    private String backoff(String context) {
-
-        // bring the context to the length of the order.
-        if (context.length() > order) {
-            context = context.substring(context.length() - order);
-        } else if (context.length() < order) {
-            context = SymbolManager.getStartSymbol(order - context.length()) + context;
+    private int generate(Random rand, NameBuffer buffer) {
+        final Metrics metrics = this.metrics;
+        if (metrics != null) {
+            return generateMeasured(rand, buffer, metrics);
         }
-
-        // Remove length until we find a categorical.
-        while (!transitions.containsKey(context) && context.length() > 0) {
-            context = context.substring(1);
+        int[] symbols = buffer.symbols;
+        int length = 0;
+        while (true) {
+            final int symbol = contexts.pick(contexts.find(symbols, 0, length), rand.nextFloat());
+            if (symbol == SymbolTable.DELIMITER) {
+                return length;
+            }
+            if (length == symbols.length) {
+                symbols = buffer.grow();
+            }
+            symbols[length++] = symbol;
         }
-
-        return context;
     }
 
-    private Transition getTransition(String context) {
-        /**
-         * Get a Transition for this context
-         */
-        if (!transitions.containsKey(context)) {
-            return delimiterTransition;
+    /**
+     * Same as {@link #generate(Random, NameBuffer)}, but counts the samples
+     * and how long the found contexts were. The metrics are updated once per
+     * name.
+     */
+    private int generateMeasured(Random rand, NameBuffer buffer, Metrics metrics) {
+        final long start = System.nanoTime();
+        int[] symbols = buffer.symbols;
+        int length = 0;
+        int steps = 0;
+        int backoffs = 0;
+        int fallbacks = 0;
+        while (true) {
+            final long found = contexts.findWithDepth(symbols, 0, length);
+            final int depth = (int) (found >>> 32);
+            steps++;
+            if (depth == 0) {
+                fallbacks++;
+            } else if (depth < order) {
+                backoffs++;
+            }
+            final int symbol = contexts.pick((int) found, rand.nextFloat());
+            if (symbol == SymbolTable.DELIMITER) {
+                metrics.recordName(steps, backoffs, fallbacks, System.nanoTime() - start);
+                return length;
+            }
+            if (length == symbols.length) {
+                symbols = buffer.grow();
+            }
+            symbols[length++] = symbol;
         }
-        return transitions.get(context);
     }
 
     /**
-     * Generates a new random char from the model depending on the prior context
-     * and the random number.
+     * Generates a name within the constraints into the buffer. The prefix is
+     * the start of the context. As long as the name is too short, the end
+     * symbol is masked and contexts which can only end the name are skipped
+     * for shorter ones. Once the name reached its maximal length it is ended.
+     * Unlike the other generate methods this already decodes the name.
      *
-     * @param context The leading text.
-     * @param rand    Random number between 0 and 1.
-     * @return A new char.
+     * @param rand        A instance of a random number generator.
+     * @param buffer      The buffer to generate the name into.
+     * @param constraints The bounds of the name.
+     * @return The number of characters of the generated name.
      */
-    private char sample(String context, float rand) throws RuntimeException {
-        // Check if we need to backoff the context.
-        context = backoff(context);
-        return getTransition(context).pick(rand);
+    private int generate(Random rand, NameBuffer buffer, NameConstraints constraints) {
+        final Metrics metrics = this.metrics;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final SymbolTable symbolTable = contexts.symbols();
+        final String prefix = constraints.getPrefix();
+        final String suffix = constraints.getSuffix();
+        int[] symbols = buffer.symbols;
+        int length = 0;
+        for (int i = 0; i < prefix.length(); ) {
+            final int codePoint = prefix.codePointAt(i);
+            if (length == symbols.length) {
+                symbols = buffer.grow();
+            }
+            // The prefix is looked up lower cased like the training names, but it is output as it was given.
+            // Symbols the model does not know are no valid ids, so they simply match no context.
+            symbols[length++] = symbolTable.id(Character.toLowerCase(codePoint));
+            i += Character.charCount(codePoint);
+        }
+        final int prefixLength = length;
+        final int suffixLength = suffix.codePointCount(0, suffix.length());
+        final int minBody = constraints.getMinLength() - suffixLength;
+        final int maxBody = constraints.getMaxLength() - suffixLength;
+        int steps = 0;
+        while (length < maxBody) {
+            steps++;
+            final int symbol = length < minBody
+                    ? contexts.pickContinuing(contexts.findContinuing(symbols, 0, length), rand.nextFloat())
+                    : contexts.pick(contexts.find(symbols, 0, length), rand.nextFloat());
+            if (symbol == SymbolTable.DELIMITER) {
+                break;
+            }
+            if (length == symbols.length) {
+                symbols = buffer.grow();
+            }
+            symbols[length++] = symbol;
+        }
+        final char[] chars = buffer.ensureChars(prefix.length() + (length - prefixLength) * 2 + suffix.length());
+        prefix.getChars(0, prefix.length(), chars, 0);
+        final int body = prefix.length() + symbolTable.decode(symbols, prefixLength, length, chars, prefix.length());
+        suffix.getChars(0, suffix.length(), chars, body);
+        if (metrics != null) {
+            // The contexts of constrained names are chosen by more than their length, so backoffs are not counted.
+            metrics.recordName(steps, 0, 0, System.nanoTime() - start);
+        }
+        return body + suffix.length();
     }
 
     /**
@@ -95,19 +238,235 @@ public class RuntimeModel<R extends Random> implements Function<R, String> {
      * @throws RuntimeException if the model hasn't yet been built
      */
     public String apply(R rand) throws RuntimeException {
-        StringBuilder sequence = new StringBuilder();
-        sequence.append(prefix);
+        final NameBuffer buffer = BUFFER.get();
+        final int length = buffer.decode(contexts.symbols(), generate(rand, buffer));
+        return new String(buffer.chars, 0, length);
+    }
+
+    /**
+     * Generates a random name within the constraints. It takes at most as many
+     * samples as the maximal length of the name, so there is no rejection loop.
+     *
+     * @param rand        A instance of a random number generator.
+     * @param constraints The bounds of the name.
+     * @return A generated name from the model.
+     */
+    public String apply(R rand, NameConstraints constraints) {
+        if (constraints == null) {
+            throw new IllegalArgumentException("constraints can not be null.");
+        }
+        final NameBuffer buffer = BUFFER.get();
+        final int length = generate(rand, buffer, constraints);
+        return new String(buffer.chars, 0, length);
+    }
+
+    /**
+     * Generates the name with the given index of the sequence of a seed. The
+     * name only depends on the model, the seed and the index, so any part of
+     * the sequence can be generated on its own, e.g. by different machines
+     * generating disjoint ranges of indices. Every index has its own random
+     * stream derived from the seed and the index.
+     *
+     * @param seed  The seed of the sequence.
+     * @param index The index of the name within the sequence.
+     * @return The name.
+     */
+    public String apply(long seed, long index) {
+        final NameBuffer buffer = BUFFER.get();
+        buffer.random.reset(seed, index);
+        final int length = buffer.decode(contexts.symbols(), generate(buffer.random, buffer));
+        return new String(buffer.chars, 0, length);
+    }
 
-        sequence.append(sample(sequence.toString(), rand.nextFloat()));
+    /**
+     * Generates the name with the given index of the sequence of a seed
+     * within the constraints. The sequence differs from the one without
+     * constraints.
+     *
+     * @param seed        The seed of the sequence.
+     * @param index       The index of the name within the sequence.
+     * @param constraints The bounds of the name.
+     * @return The name.
+     * @see #apply(long, long)
+     */
+    public String apply(long seed, long index, NameConstraints constraints) {
+        if (constraints == null) {
+            throw new IllegalArgumentException("constraints can not be null.");
+        }
+        final NameBuffer buffer = BUFFER.get();
+        buffer.random.reset(seed, index);
+        final int length = generate(buffer.random, buffer, constraints);
+        return new String(buffer.chars, 0, length);
+    }
 
-        while (sequence.charAt(sequence.length() - 1) != SymbolManager.getEndSymbol()) {
-            sequence.append(sample(sequence.toString(), rand.nextFloat()));
+    /**
+     * Computes how likely the model generates the name. Every character and
+     * the end of the name are looked up in the longest known context in front
+     * of them, the same way they are picked when generating. The name is lower
+     * cased like the training names. A character the model does not know can
+     * never be generated. Scoring only uses a buffer of the calling thread and
+     * does not allocate.
+     *
+     * @param name The name to score.
+     * @return Natural logarithm of the probability, negative infinity if the
+     * model can not generate the name.
+     */
+    public double score(CharSequence name) {
+        if (name == null) {
+            throw new IllegalArgumentException("name can not be null.");
+        }
+        final SymbolTable symbolTable = contexts.symbols();
+        final int[] symbols = BUFFER.get().ensure(name.length());
+        int length = 0;
+        for (int i = 0; i < name.length(); ) {
+            final int codePoint = Character.codePointAt(name, i);
+            final int symbol = symbolTable.id(Character.toLowerCase(codePoint));
+            if (symbol == SymbolTable.UNKNOWN) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            symbols[length++] = symbol;
+            i += Character.charCount(codePoint);
         }
+        double score = 0;
+        // Multiplying is much cheaper than a logarithm per character, only a long name needs more than one.
+        double probability = 1;
+        for (int i = 0; i <= length; i++) {
+            final float p = contexts.probability(contexts.find(symbols, 0, i),
+                    i < length ? symbols[i] : SymbolTable.DELIMITER);
+            if (p <= 0) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            probability *= p;
+            if (probability < 1e-250) {
+                score += Math.log(probability);
+                probability = 1;
+            }
+        }
+        return score + Math.log(probability);
+    }
 
-        // Remove end symbol.
-        sequence.delete(0, prefix.length());
-        sequence.deleteCharAt(sequence.length() - 1);
+    /**
+     * Scores the names on all cores.
+     *
+     * @param names The names to score, must not be modified while they are scored.
+     * @return The scores in the order of the names.
+     * @see #score(CharSequence)
+     */
+    public double[] scoreAll(List<? extends CharSequence> names) {
+        if (names == null) {
+            throw new IllegalArgumentException("names can not be null.");
+        }
+        final double[] scores = new double[names.size()];
+        IntStream.range(0, scores.length).parallel().forEach(i -> scores[i] = score(names.get(i)));
+        return scores;
+    }
+
+    /**
+     * Finds the k names the model generates with the highest probability,
+     * without sampling. The search is exact, but gives up after expanding
+     * {@value NameSearch#DEFAULT_MAX_EXPANSIONS} partial names and then
+     * returns fewer names.
+     *
+     * @param k The number of names.
+     * @return At most k names in descending order of their probability.
+     */
+    public List<ScoredName> mostProbable(int k) {
+        return mostProbable(k, 0, Integer.MAX_VALUE);
+    }
 
-        return sequence.toString();
+    /**
+     * Finds the k most probable names within the length bounds. The
+     * probabilities are the ones of the unconstrained model, not the
+     * renormalized ones of {@link #apply(Random, NameConstraints)}.
+     *
+     * @param k         The number of names.
+     * @param minLength Minimal length of the names.
+     * @param maxLength Maximal length of the names.
+     * @return At most k names in descending order of their probability.
+     * @see #mostProbable(int)
+     */
+    public List<ScoredName> mostProbable(int k, int minLength, int maxLength) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative.");
+        }
+        if (minLength < 0 || maxLength < minLength) {
+            throw new IllegalArgumentException("Lengths must satisfy 0 <= minLength <= maxLength.");
+        }
+        return new NameSearch(contexts, order, minLength, maxLength).search(k, NameSearch.DEFAULT_MAX_EXPANSIONS);
+    }
+
+    /**
+     * Generates a random name and appends it to the given output. Besides
+     * what the output itself allocates, this does not create any garbage.
+     *
+     * @param rand A instance of a random number generator.
+     * @param out  The output to append the name to, e.g. a StringBuilder or a CharBuffer.
+     * @throws IOException if appending to the output fails.
+     */
+    public void apply(R rand, Appendable out) throws IOException {
+        final NameBuffer buffer = BUFFER.get();
+        final int length = buffer.decode(contexts.symbols(), generate(rand, buffer));
+        for (int i = 0; i < length; i++) {
+            out.append(buffer.chars[i]);
+        }
+    }
+
+    /**
+     * Generates a random name into the given array, starting at the offset.
+     *
+     * @param rand   A instance of a random number generator.
+     * @param dest   The array to write the name to.
+     * @param offset The position in the array to write the first character to.
+     * @return The length of the written name.
+     * @throws IndexOutOfBoundsException if the generated name does not fit into the array.
+     */
+    public int apply(R rand, char[] dest, int offset) {
+        final NameBuffer buffer = BUFFER.get();
+        final int length = buffer.decode(contexts.symbols(), generate(rand, buffer));
+        if (offset < 0 || length > dest.length - offset) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Name of length %d does not fit into array of length %d at offset %d.",
+                    length, dest.length, offset));
+        }
+        System.arraycopy(buffer.chars, 0, dest, offset, length);
+        return length;
+    }
+
+    /**
+     * Growable buffers of the symbol ids and the characters of a name which
+     * are reused between generated names.
+     */
+    private static final class NameBuffer {
+        private int[] symbols = new int[32];
+        private char[] chars = new char[64];
+        private final IndexedRandom random = new IndexedRandom();
+
+        private int[] grow() {
+            symbols = Arrays.copyOf(symbols, symbols.length * 2);
+            return symbols;
+        }
+
+        private int[] ensure(int capacity) {
+            if (symbols.length < capacity) {
+                symbols = Arrays.copyOf(symbols, Math.max(capacity, symbols.length * 2));
+            }
+            return symbols;
+        }
+
+        private char[] ensureChars(int capacity) {
+            if (chars.length < capacity) {
+                chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+            }
+            return chars;
+        }
+
+        /**
+         * Decodes the generated symbols into the characters.
+         *
+         * @return The number of characters.
+         */
+        private int decode(SymbolTable symbolTable, int length) {
+            return symbolTable.decode(symbols, 0, length, ensureChars(length * 2), 0);
+        }
     }
 }
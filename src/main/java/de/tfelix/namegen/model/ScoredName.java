@@ -0,0 +1,44 @@
+package de.tfelix.namegen.model;
+
+/**
+ * A name together with the probability the model generates it with.
+ *
+ * @author Thomas Felix
+ */
+public final class ScoredName {
+
+    private final String name;
+    private final double logProbability;
+
+    /**
+     * @param name           The name.
+     * @param logProbability Natural logarithm of the probability of the name.
+     */
+    public ScoredName(String name, double logProbability) {
+        if (name == null) {
+            throw new IllegalArgumentException("name can not be null.");
+        }
+        this.name = name;
+        this.logProbability = logProbability;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Natural logarithm of the probability, which does not underflow for long names.
+     */
+    public double getLogProbability() {
+        return logProbability;
+    }
+
+    public double getProbability() {
+        return Math.exp(logProbability);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%.3g)", name, getProbability());
+    }
+}
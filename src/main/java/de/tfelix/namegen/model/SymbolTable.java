@@ -0,0 +1,164 @@
+package de.tfelix.namegen.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Dictionary of the symbols a compiled model knows. Every code point used by
+ * the model, including supplementary characters like emoji, gets a small
+ * dense id, so the compiled contexts store their symbols in one byte for up to
+ * 256 symbols and in two bytes for bigger alphabets like the CJK ideographs.
+ * <p>
+ * Id 0 is the delimiter which pads the start and marks the end of a name. The
+ * other ids are assigned in ascending order of the code points, so sorting by
+ * id sorts by code point. Code points of the common scripts are mapped by a
+ * direct lookup, all others by a binary search.
+ * </p>
+ *
+ * @author Thomas Felix
+ */
+final class SymbolTable {
+
+    static final int DELIMITER = 0;
+    static final int UNKNOWN = -1;
+
+    /**
+     * Largest number of symbols, as an id is stored in at most two bytes.
+     */
+    static final int MAX_SYMBOLS = 1 << 16;
+
+    /**
+     * Code points below this are mapped by the direct lookup. This covers
+     * Latin, Greek, Cyrillic, Armenian, Hebrew and Arabic.
+     */
+    private static final int DIRECT_LIMIT = 0x800;
+
+    private final int[] codePoints;
+    private final char[] direct;
+
+    private SymbolTable(int[] codePoints) {
+        this.codePoints = codePoints;
+        int directSize = 0;
+        for (int id = 1; id < codePoints.length && codePoints[id] < DIRECT_LIMIT; id++) {
+            directSize = codePoints[id] + 1;
+        }
+        this.direct = new char[directSize];
+        for (int id = 1; id < codePoints.length && codePoints[id] < DIRECT_LIMIT; id++) {
+            direct[codePoints[id]] = (char) id;
+        }
+    }
+
+    /**
+     * Creates the table of the given code points. The delimiter is always
+     * part of the table and ignored if it is among them.
+     *
+     * @param codePoints The code points of the symbols, in any order and possibly repeated.
+     * @param count      The number of code points to use.
+     * @return The table.
+     */
+    static SymbolTable of(int[] codePoints, int count) {
+        final int delimiter = SymbolManager.getEndSymbol();
+        final int[] sorted = Arrays.copyOf(codePoints, count);
+        Arrays.sort(sorted);
+        final int[] symbols = new int[count + 1];
+        symbols[DELIMITER] = delimiter;
+        int size = 1;
+        for (int codePoint : sorted) {
+            if (codePoint != delimiter && (size == 1 || symbols[size - 1] != codePoint)) {
+                symbols[size++] = codePoint;
+            }
+        }
+        if (size > MAX_SYMBOLS) {
+            throw new IllegalArgumentException(String.format(
+                    "A model can not use more than %d different symbols, but this one uses %d.", MAX_SYMBOLS, size));
+        }
+        return new SymbolTable(Arrays.copyOf(symbols, size));
+    }
+
+    /**
+     * @return The number of symbols including the delimiter.
+     */
+    int size() {
+        return codePoints.length;
+    }
+
+    /**
+     * @return The number of bytes an id is stored with, 1 or 2.
+     */
+    int symbolBytes() {
+        return codePoints.length <= 256 ? 1 : 2;
+    }
+
+    /**
+     * @param codePoint A code point.
+     * @return The id of the code point or {@link #UNKNOWN} if the model does not know it.
+     */
+    int id(int codePoint) {
+        if (codePoint < direct.length) {
+            final int id = direct[codePoint];
+            return id != 0 ? id : UNKNOWN;
+        }
+        if (codePoint == codePoints[DELIMITER]) {
+            return DELIMITER;
+        }
+        final int id = Arrays.binarySearch(codePoints, 1, codePoints.length, codePoint);
+        return id >= 0 ? id : UNKNOWN;
+    }
+
+    /**
+     * @param id The id of a symbol.
+     * @return The code point of the symbol.
+     */
+    int codePoint(int id) {
+        return codePoints[id];
+    }
+
+    /**
+     * Writes the symbols with the given ids as UTF-16.
+     *
+     * @param ids    The ids of the symbols.
+     * @param from   The index of the first id.
+     * @param to     The index after the last id.
+     * @param dest   The array to write to. It needs space for two characters per id.
+     * @param offset The position in the array to write the first character to.
+     * @return The number of written characters.
+     */
+    int decode(int[] ids, int from, int to, char[] dest, int offset) {
+        int position = offset;
+        for (int i = from; i < to; i++) {
+            position += Character.toChars(codePoints[ids[i]], dest, position);
+        }
+        return position - offset;
+    }
+
+    /**
+     * @param out The little endian buffer to write the code points of the symbols to.
+     */
+    void writeTo(ByteBuffer out) {
+        for (int codePoint : codePoints) {
+            out.putInt(codePoint);
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @param in   The little endian buffer positioned at the start of the table.
+     * @param size The number of symbols.
+     * @return The table.
+     */
+    static SymbolTable readFrom(ByteBuffer in, int size) {
+        if (size < 1 || size > MAX_SYMBOLS || size > in.remaining() / 4) {
+            throw new IllegalArgumentException("The model file is corrupt.");
+        }
+        final int[] codePoints = new int[size];
+        in.asIntBuffer().get(codePoints);
+        in.position(in.position() + size * 4);
+        for (int id = 0; id < size; id++) {
+            if (!Character.isValidCodePoint(codePoints[id]) || id > 1 && codePoints[id] <= codePoints[id - 1]) {
+                throw new IllegalArgumentException("The model file is corrupt.");
+            }
+        }
+        return new SymbolTable(codePoints);
+    }
+}
@@ -16,9 +16,10 @@ public interface TrainableModel extends Serializable {
 	 * string.
 	 * 
 	 * @param line
-	 *            A new name to be included into the models description.
+	 *            A new name to be included into the models description. It
+	 *            might be a reused buffer, so it must not be kept.
 	 */
-	void update(String line);
+	void update(CharSequence line);
 
     /**
      * Returns a modified TrainableModel instance that has been optimized for runtime rather than training. This should be called
@@ -27,4 +28,41 @@ public interface TrainableModel extends Serializable {
      */
 	RuntimeModel build();
 
+	/**
+	 * Builds the runtime model with only the contexts the pruning keeps.
+	 * 
+	 * @param pruning
+	 *            Decides which contexts are kept.
+	 * @return The pruned runtime model.
+	 */
+	RuntimeModel build(Pruning pruning);
+
+	/**
+	 * Describes how much the pruning would shrink the model and how much worse
+	 * it would predict the names it was trained on.
+	 * 
+	 * @param pruning
+	 *            Decides which contexts are kept.
+	 * @return The report.
+	 */
+	PruningReport report(Pruning pruning);
+
+	/**
+	 * Creates a new model without any observations but the same parameters as
+	 * this one. It can be used to collect partial observations on another
+	 * thread which are then merged back.
+	 * 
+	 * @return An empty model of the same kind.
+	 */
+	TrainableModel createEmpty();
+
+	/**
+	 * Adds all the observations of the other model to this model. The other
+	 * model must have been created with the same parameters.
+	 * 
+	 * @param other
+	 *            The model whose observations are added.
+	 */
+	void merge(TrainableModel other);
+
 }
\ No newline at end of file
@@ -2,22 +2,20 @@ package de.tfelix.namegen.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.ibm.icu.text.UnicodeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ibm.icu.util.ULocale;
-import com.ibm.icu.util.LocaleData;
 
 import java.io.Serializable;
 import java.util.*;
 import java.util.Map.Entry;
 
-import static com.ibm.icu.util.LocaleData.ES_STANDARD;
-
 /**
  * This holds every following character for an input state. It can be picked at
- * random by providing a float between 0 and 1.
+ * random by providing a float between 0 and 1. Characters are code points, so
+ * supplementary characters like emoji are a single symbol, and they are keyed
+ * by their string in the distribution.
  * 
  * @author Thomas Felix
  *
@@ -27,10 +25,21 @@ class Transition implements Serializable {
 	private static Logger logger = LoggerFactory.getLogger(Transition.class);
 	private static final long serialVersionUID = 1L;
 	private final ULocale locale;
-	private final Map<Character, Integer> observedChars;
+	private final Map<Integer, Integer> observedChars;
 	private int observations;
 	private float priorProbability;
-	private Map<Character, Float> distribution;  // Store the distribution here once the observations are finished.
+	private Map<String, Float> distribution;  // Store the distribution of the observed characters here once the observations are finished.
+	/**
+	 * The letters of the locale which all get the prior probability on top of the distribution. The array is
+	 * shared by all transitions of the locale, so the alphabet is not stored in every single transition.
+	 */
+	private transient int[] alphabet;
+	/**
+	 * Compiled form of the distribution used for sampling: the symbols in the iteration order of the distribution
+	 * and the running sum of their probabilities, so a pick is a binary search instead of a scan over boxed entries.
+	 */
+	private transient int[] symbols;
+	private transient float[] cumulative;
 	/**
 	 * Larger alphabets should really have smaller priors, but anyway, to offer some amount of independence between the
 	 * prior and the alphabet, we'll scale the selection point by the actual probability distribution (created with the
@@ -52,16 +61,68 @@ class Transition implements Serializable {
 		this.observedChars = new HashMap<>();
 	}
 
-	public Map<Character, Float> getDistribution() {
+	public Map<String, Float> getDistribution() {
 		return distribution;
 	}
 
+	/**
+	 * @return The probability every letter of the alphabet gets in addition to the distribution.
+	 */
+	public float getPrior() {
+		return priorProbability;
+	}
+
+	/**
+	 * @return The code points of the shared letters of the alphabet the prior applies to.
+	 */
+	int[] getAlphabet() {
+		return alphabet;
+	}
+
+	/**
+	 * Sets the letters the prior applies to. Transitions read from a file do not know their locale, so the model
+	 * hands them the alphabet of its locale.
+	 *
+	 * @param alphabet The code points of the shared letters of the alphabet.
+	 */
+	void useAlphabet(int[] alphabet) {
+		this.alphabet = alphabet;
+	}
+
+	/**
+	 * @return The code points of the built distribution in their sampling order.
+	 */
+	int[] getSymbols() {
+		return symbols;
+	}
+
+	/**
+	 * @return The cumulative probabilities of the symbols of the built distribution.
+	 */
+	float[] getCumulative() {
+		return cumulative;
+	}
+
+	public Transition(Map<String, Float> distribution) {
+		this(distribution, 0f);
+	}
+
+	/**
+	 * Creates a runtime transition. Files written before the prior was stored separately contain the whole alphabet
+	 * in the distribution and no prior.
+	 *
+	 * @param distribution The probabilities of the observed characters, each a single code point.
+	 * @param prior        The probability every letter of the alphabet gets in addition.
+	 */
 	@JsonCreator
-	public Transition(@JsonProperty("distribution") Map<Character, Float> distribution) {
+	public Transition(@JsonProperty("distribution") Map<String, Float> distribution,
+					  @JsonProperty("prior") float prior) {
 		// todo: separate interface for runtime transition
 		this.distribution = distribution;
+		this.priorProbability = prior;
 		this.locale = null;
 		this.observedChars = null;
+		compile();
 	}
 
 	/**
@@ -69,9 +130,9 @@ class Transition implements Serializable {
 	 * internal counts and observations will be updated.
 	 * 
 	 * @param c
-	 *			The character that is being defined as a valid output.
+	 *			The code point of the character that is being defined as a valid output.
 	 */
-	public void update(char c) {
+	public void update(int c) {
 		if (!observedChars.containsKey(c)) {
 			observedChars.put(c, 0);
 		}
@@ -81,68 +142,141 @@ class Transition implements Serializable {
 	}
 
 	/**
-	 * Once we've finished learning, prepare the whole alphabet for generating letters.
+	 * Adds the counts of another transition to this one.
+	 * 
+	 * @param other
+	 *			The transition whose observations are added.
+	 */
+	public void merge(Transition other) {
+		for (Entry<Integer, Integer> entry : other.observedChars.entrySet()) {
+			Integer count = observedChars.get(entry.getKey());
+			observedChars.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+		}
+		observations += other.observations;
+	}
+
+	/**
+	 * Once we've finished learning, prepare the distribution for generating letters. Only the observed characters
+	 * are stored in the distribution. The prior is kept as a single probability which every letter of the shared
+	 * alphabet of the locale gets on top of it when sampling.
 	 */
 	public Transition build() {
-		Transition runtimeTransition = new Transition(this.priorProbability, this.locale);
+		final int[] symbols = new int[observedChars.size()];
+		final int[] counts = new int[observedChars.size()];
+		int i = 0;
+		for (Entry<Integer, Integer> entry : observedChars.entrySet()) {
+			symbols[i] = entry.getKey();
+			counts[i++] = entry.getValue();
+		}
+		return build(priorProbability, locale, symbols, counts, observations);
+	}
+
+	/**
+	 * Builds a runtime transition from plain counts.
+	 *
+	 * @param priorProbability
+	 *			The default chance of being chosen, applied to each character of the alphabet.
+	 * @param locale
+	 *			The locale of the alphabet.
+	 * @param symbols
+	 *			The code points of the observed characters.
+	 * @param counts
+	 *			How often each of the characters was observed.
+	 * @param observations
+	 *			The sum of the counts.
+	 * @return The runtime transition.
+	 */
+	static Transition build(float priorProbability, ULocale locale, int[] symbols, int[] counts, int observations) {
+		Transition runtimeTransition = new Transition(priorProbability, locale);
 		// Having a tree allows deterministic traversal
 		runtimeTransition.distribution = new TreeMap<>();
 		float observationRange = 1.0f;
 		if(priorProbability >= Math.ulp(1.0)) {
-			// Prior is desired; initialise the alphabet.
-			UnicodeSet alphabet = LocaleData.getExemplarSet(this.locale, ES_STANDARD);
+			// Prior is desired; use the alphabet.
+			int[] alphabet = Alphabet.of(locale);
 			/* Observations need to be scaled so that the probability across the alphabet sums to 1.0 */
-			observationRange = (1.0f - priorProbability * alphabet.size());
+			observationRange = (1.0f - priorProbability * alphabet.length);
 			if (observationRange < 0.0) {
 				logger.warn("The prior probability was meant to be the chance that any available letter would occur. " +
 						"By specifying a probability of {} with {} letters in the alphabet means that there's no " +
 						"room in the probability distribution to adjust for the letters that are more likely.",
-						priorProbability, alphabet.size());
+						priorProbability, alphabet.length);
 				// Set a default prior − the show must go on
-				priorProbability = 1.0f / (2.0f*alphabet.size());
+				priorProbability = 1.0f / (2.0f*alphabet.length);
 				observationRange = 0.5f;  // Half of our outputs will be influenced by the observations
 			}
-			Iterator<String> iterator = alphabet.iterator();
-			while(iterator.hasNext()) {
-				Character letter = iterator.next().charAt(0);
-				runtimeTransition.distribution.put(letter, priorProbability);
-			}
+			runtimeTransition.priorProbability = priorProbability;
+			runtimeTransition.alphabet = alphabet;
+		} else {
+			runtimeTransition.priorProbability = 0f;
 		}
-		for(Entry<Character, Integer> entry: observedChars.entrySet()) {
+		for (int i = 0; i < symbols.length; i++) {
 			// Some observed characters (such as the ending token, hopefully) might not belong to the alphabet
-			float probability = observationRange * entry.getValue() / (float)(this.observations);
-			if (runtimeTransition.distribution.containsKey(entry.getKey())) {
-				Float prior = runtimeTransition.distribution.get(entry.getKey());
-				probability += prior;
-			}
-			runtimeTransition.distribution.put(entry.getKey(), probability);
+			float probability = observationRange * counts[i] / (float)(observations);
+			runtimeTransition.distribution.put(new String(Character.toChars(symbols[i])), probability);
 		}
+		runtimeTransition.compile();
 		return runtimeTransition;
 	}
 
+	/**
+	 * Flattens the distribution into parallel arrays of symbols and cumulative probabilities. The cumulation is done
+	 * in the same order as iterating the distribution would, so picks stay identical to a linear scan.
+	 */
+	private void compile() {
+		if (distribution == null) {
+			return;
+		}
+		symbols = new int[distribution.size()];
+		cumulative = new float[distribution.size()];
+		float cumulation = 0f;
+		int i = 0;
+		for (Entry<String, Float> entry : distribution.entrySet()) {
+			final String symbol = entry.getKey();
+			if (symbol.isEmpty() || symbol.length() != Character.charCount(symbol.codePointAt(0))) {
+				throw new IllegalArgumentException(String.format("'%s' is not a single character.", symbol));
+			}
+			cumulation += entry.getValue();
+			symbols[i] = symbol.codePointAt(0);
+			cumulative[i] = cumulation;
+			i++;
+		}
+	}
+
 	/**
 	 * Deterministically pick a new character from this transition's probability distribution.
 	 * 
 	 * @param position
 	 *			A position in the probability distribution ∈ [0, 1.0].
-	 * @return A randomly picked character.
+	 * @return The code point of a randomly picked character.
 	 */
-	public char pick(float position) throws RuntimeException {
+	public int pick(float position) throws RuntimeException {
 		if (position < 0 || position > 1.0) {
 			throw new IllegalArgumentException(String.format("Probability %g must be between 0 and 1.0", position));
 		}
-		if(distribution == null) {
+		if(symbols == null) {
 			throw new RuntimeException("A transition was called for sampling before it had been built.");
 		}
-		float cumulation = 0f;
-		for (Entry<Character, Float> entry : distribution.entrySet()) {
-			/** By iterating and cumulating, it's easier to query specific letters and see their probability.
-			 * Todo: replace this approach with an array of elements, specifying the cumulative sum (for binary search
-			 * at runtime).
-			 **/
-			cumulation += entry.getValue();
-			if(cumulation > position) {
-				return entry.getKey();
+		final float observed = cumulative.length > 0 ? cumulative[cumulative.length - 1] : 0f;
+		if (position < observed) {
+			// Find the first symbol whose cumulative probability exceeds the position.
+			int low = 0;
+			int high = cumulative.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (cumulative[mid] > position) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			return symbols[low];
+		}
+		// Beyond the observations every letter of the alphabet has the same prior probability.
+		if (alphabet != null && priorProbability > 0) {
+			int index = (int) ((position - observed) / priorProbability);
+			if (index < alphabet.length) {
+				return alphabet[index];
 			}
 		}
 		logger.error("Unable to find a position for {} in Transition ", position);
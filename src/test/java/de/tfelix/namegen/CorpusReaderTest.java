@@ -0,0 +1,68 @@
+package de.tfelix.namegen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CorpusReaderTest {
+
+	private static final String CORPUS = "Ängelholm\n  Øresund \r\n\nßeta\nÉtienne";
+	private static final List<String> EXPECTED = Arrays.asList("ängelholm", "øresund", "ßeta", "étienne");
+
+	@Test
+	public void read_mappedFile_decodesNormalizedLines() throws IOException {
+		Path file = write(CORPUS.getBytes(StandardCharsets.UTF_8));
+		List<String> lines = new ArrayList<>();
+		LineBuffer buffer = new LineBuffer(line -> lines.add(line.toString()));
+		CorpusReader.read(file, 0, Files.size(file), buffer);
+		Assert.assertEquals(EXPECTED, lines);
+	}
+
+	@Test
+	public void split_regionsEndAfterNewline() throws IOException {
+		Path file = write(CORPUS.getBytes(StandardCharsets.UTF_8));
+		List<long[]> regions = CorpusReader.split(file, 3);
+		List<String> lines = new ArrayList<>();
+		LineBuffer buffer = new LineBuffer(line -> lines.add(line.toString()));
+		long expectedStart = 0;
+		for (long[] region : regions) {
+			Assert.assertEquals(expectedStart, region[0]);
+			CorpusReader.read(file, region[0], region[1], buffer);
+			expectedStart = region[1];
+		}
+		Assert.assertEquals(Files.size(file), expectedStart);
+		Assert.assertEquals(EXPECTED, lines);
+	}
+
+	@Test
+	public void read_gzipStream_decompresses() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(CORPUS.getBytes(StandardCharsets.UTF_8));
+		}
+		Path file = write(bytes.toByteArray());
+		Assert.assertTrue(CorpusReader.isGzip(file));
+
+		List<String> lines = new ArrayList<>();
+		LineBuffer buffer = new LineBuffer(line -> lines.add(line.toString()));
+		CorpusReader.read(CorpusReader.open(new ByteArrayInputStream(bytes.toByteArray())), buffer);
+		Assert.assertEquals(EXPECTED, lines);
+	}
+
+	private Path write(byte[] content) throws IOException {
+		File file = File.createTempFile("corpus", ".txt");
+		file.deleteOnExit();
+		return Files.write(file.toPath(), content);
+	}
+}
@@ -0,0 +1,187 @@
+package de.tfelix.namegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.BinaryModelFormat;
+import de.tfelix.namegen.model.RuntimeModel;
+import de.tfelix.namegen.model.TestModels;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ModelRegistryTest {
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Test
+	public void get_sameId_loadsOnce() {
+		ModelRegistry registry = new ModelRegistry(this::model, Long.MAX_VALUE);
+		RuntimeModel<Random> first = registry.get("anna");
+		RuntimeModel<Random> second = registry.get("anna");
+
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals("anna", first.apply(new Random(1)));
+		Assert.assertEquals(1, registry.stats().getHits());
+		Assert.assertEquals(1, registry.stats().getMisses());
+		Assert.assertEquals(BinaryModelFormat.size(first), registry.bytes());
+	}
+
+	@Test
+	public void get_concurrently_loadsOnce() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		ModelRegistry registry = new ModelRegistry(id -> {
+			try {
+				loading.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return model(id);
+		}, Long.MAX_VALUE);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<RuntimeModel<Random>>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> registry.<Random>get("anna")));
+			}
+			Thread.sleep(50);
+			loading.countDown();
+			for (Future<RuntimeModel<Random>> result : results) {
+				Assert.assertSame(results.get(0).get(), result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, registry.stats().getMisses());
+	}
+
+	@Test
+	public void get_overLimit_evictsLeastRecentlyUsed() {
+		long size = BinaryModelFormat.size(model("xxxx"));
+		loads.set(0);
+		ModelRegistry registry = new ModelRegistry(this::model, 2 * size);
+		registry.get("aaaa");
+		registry.get("bbbb");
+		registry.get("aaaa");
+		registry.get("cccc");
+
+		Assert.assertEquals(2, registry.size());
+		Assert.assertEquals(1, registry.stats().getEvictions());
+		registry.get("aaaa");
+		Assert.assertEquals(3, loads.get());
+		registry.get("bbbb");
+		Assert.assertEquals(4, loads.get());
+		Assert.assertTrue(registry.bytes() <= 2 * size);
+	}
+
+	@Test
+	public void nameGen_concurrently_countsOneRequest() throws Exception {
+		ModelRegistry registry = new ModelRegistry(this::model, Long.MAX_VALUE);
+		NameGen<Random> nameGen = registry.nameGen("anna");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> {
+					for (int j = 0; j < 1000; j++) {
+						Assert.assertEquals("anna", nameGen.getName());
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertEquals(0, registry.stats().getHits());
+		Assert.assertEquals(1, registry.stats().getMisses());
+	}
+
+	@Test
+	public void nameGen_generating_keepsModelRecentlyUsed() {
+		long size = BinaryModelFormat.size(model("xxxx"));
+		loads.set(0);
+		ModelRegistry registry = new ModelRegistry(this::model, 2 * size);
+		NameGen<Random> nameGen = registry.nameGen("aaaa", new Random(1));
+		registry.get("bbbb");
+		registry.get("bbbb");
+		nameGen.getName();
+		registry.get("cccc");
+
+		Assert.assertEquals(3, loads.get());
+		nameGen.getName();
+		Assert.assertEquals(3, loads.get());
+		registry.get("bbbb");
+		Assert.assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void get_failedLoad_isRetried() {
+		ModelRegistry registry = new ModelRegistry(id -> {
+			if (loads.incrementAndGet() == 1) {
+				throw new IOException("broken");
+			}
+			return model(id);
+		}, Long.MAX_VALUE);
+		try {
+			registry.get("anna");
+			Assert.fail("The failed load must be reported.");
+		} catch (ModelLoadException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertEquals(0, registry.size());
+		Assert.assertNotNull(registry.get("anna"));
+		Assert.assertEquals(1, registry.stats().getLoadFailures());
+	}
+
+	@Test
+	public void get_loaderThrowsError_doesNotBlockLaterRequests() {
+		ModelRegistry registry = new ModelRegistry(id -> {
+			if (loads.incrementAndGet() == 1) {
+				throw new OutOfMemoryError("broken");
+			}
+			return model(id);
+		}, Long.MAX_VALUE);
+		try {
+			registry.get("anna");
+			Assert.fail("The error must be rethrown.");
+		} catch (OutOfMemoryError e) {
+			Assert.assertEquals("broken", e.getMessage());
+		}
+		Assert.assertEquals(0, registry.size());
+		Assert.assertNotNull(registry.get("anna"));
+		Assert.assertEquals(1, registry.stats().getLoadFailures());
+	}
+
+	@Test
+	public void nameGen_modelFile_generatesNames() throws IOException {
+		File file = File.createTempFile("test_model", ".bin");
+		file.deleteOnExit();
+		BinaryModelFormat.write(model("thomas"), file.toPath());
+		ModelRegistry registry = ModelRegistry.ofFiles(id -> file.toPath(), Long.MAX_VALUE);
+
+		NameGen<Random> nameGen = registry.nameGen("thomas", new Random(1));
+		Assert.assertEquals("thomas", nameGen.getName());
+		registry.invalidate("thomas");
+		Assert.assertEquals(0, registry.bytes());
+		Assert.assertEquals("thomas", nameGen.getName());
+		Assert.assertEquals(1, registry.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	private RuntimeModel<?> model(String name) {
+		loads.incrementAndGet();
+		return TestModels.trained(3, 0f, ULocale.ENGLISH, name);
+	}
+}
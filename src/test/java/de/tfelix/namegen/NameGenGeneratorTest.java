@@ -1,11 +1,16 @@
 package de.tfelix.namegen;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.stream.Stream;
 
 import com.ibm.icu.util.ULocale;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class NameGenGeneratorTest {
@@ -33,6 +38,61 @@ public class NameGenGeneratorTest {
 		gen.analyze(f.getAbsolutePath());
 	}
 
+	@Test
+	public void analyze_parallel_equalsSequential() throws URISyntaxException {
+		
+		URL url = getClass().getClassLoader().getResource("morrow_names.txt");
+		File f = Paths.get(url.toURI()).toFile();
+		NameGenGenerator sequential = getGen();
+		sequential.analyze(f.getAbsolutePath());
+		NameGenGenerator parallel = getGen();
+		parallel.analyze(f.getAbsolutePath(), 4);
+		Assert.assertEquals(sequential.build().transitions.keySet(), parallel.build().transitions.keySet());
+	}
+
+	@Test
+	public void analyze_streamAndInputStream_equalsFile() throws Exception {
+		
+		URL url = getClass().getClassLoader().getResource("morrow_names.txt");
+		File f = Paths.get(url.toURI()).toFile();
+		NameGenGenerator file = getGen();
+		file.analyzeFile(f.toPath());
+		NameGenGenerator stream = getGen();
+		try (Stream<String> lines = Files.lines(f.toPath())) {
+			stream.analyzeNames(lines.parallel());
+		}
+		NameGenGenerator inputStream = getGen();
+		try (InputStream in = new FileInputStream(f)) {
+			inputStream.analyzeStream(in);
+		}
+		Assert.assertEquals(file.build().transitions.keySet(), stream.build().transitions.keySet());
+		Assert.assertEquals(file.build().transitions.keySet(), inputStream.build().transitions.keySet());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void analyze_zeroThreads_throws() throws URISyntaxException {
+		
+		URL url = getClass().getClassLoader().getResource("morrow_names.txt");
+		File f = Paths.get(url.toURI()).toFile();
+		NameGenGenerator gen = getGen();
+		gen.analyze(f.getAbsolutePath(), 0);
+	}
+
+	@Test
+	public void buildNameIndex_parallel_containsAnalyzedNames() throws Exception {
+
+		URL url = getClass().getClassLoader().getResource("morrow_names.txt");
+		File f = Paths.get(url.toURI()).toFile();
+		NameGenGenerator gen = getGen();
+		gen.setNameIndex(true);
+		gen.analyze(f.getAbsolutePath(), 4);
+		NameIndex index = gen.buildNameIndex();
+		try (Stream<String> lines = Files.lines(f.toPath())) {
+			lines.map(String::trim).filter(line -> !line.isEmpty())
+					.forEach(line -> Assert.assertTrue(line, index.contains(line)));
+		}
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void analyze_writeNullFile_throws() throws Exception {
 		
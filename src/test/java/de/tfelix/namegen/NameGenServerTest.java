@@ -0,0 +1,148 @@
+package de.tfelix.namegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.BinaryModelFormat;
+import de.tfelix.namegen.model.MarkovModel;
+import de.tfelix.namegen.model.Pruning;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NameGenServerTest {
+
+	private final ObjectMapper json = new ObjectMapper();
+	private File modelFile;
+	private NameGenServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		modelFile = File.createTempFile("namegen", ".bin");
+		BinaryModelFormat.write(model.build(Pruning.NONE), modelFile.toPath());
+		server = new NameGenServer(Collections.<String, Path>singletonMap("thomas", modelFile.toPath()),
+				Long.MAX_VALUE, new InetSocketAddress("localhost", 0));
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		modelFile.delete();
+	}
+
+	@Test
+	public void get_names_returnsBatch() throws IOException {
+		HttpURLConnection connection = open("/names?model=thomas&count=3");
+		Assert.assertEquals(200, connection.getResponseCode());
+		JsonNode names = json.readTree(read(connection.getInputStream()));
+		Assert.assertEquals(3, names.size());
+		Assert.assertEquals("thomas", names.get(0).asText());
+		Assert.assertEquals(3, server.getMetrics().getNames());
+	}
+
+	@Test
+	public void get_constrainedNames_meetsConstraints() throws IOException {
+		HttpURLConnection connection = open("/names?model=thomas&count=5&max=4&prefix=t");
+		Assert.assertEquals(200, connection.getResponseCode());
+		for (JsonNode name : json.readTree(read(connection.getInputStream()))) {
+			Assert.assertTrue(name.asText().startsWith("t"));
+			Assert.assertTrue(name.asText().length() <= 4);
+		}
+	}
+
+	@Test
+	public void post_batches_returnsOneBatchEach() throws IOException {
+		HttpURLConnection connection = open("/names");
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write("[{\"model\":\"thomas\",\"count\":2},{\"model\":\"thomas\",\"count\":1,\"max\":3}]"
+					.getBytes(StandardCharsets.UTF_8));
+		}
+		Assert.assertEquals(200, connection.getResponseCode());
+		JsonNode batches = json.readTree(read(connection.getInputStream()));
+		Assert.assertEquals(2, batches.size());
+		Assert.assertEquals(2, batches.get(0).size());
+		Assert.assertEquals(1, batches.get(1).size());
+	}
+
+	@Test
+	public void get_unknownModel_returns404() throws IOException {
+		Assert.assertEquals(404, open("/names?model=anna").getResponseCode());
+	}
+
+	@Test
+	public void get_tooManyNames_returns400() throws IOException {
+		Assert.assertEquals(400, open("/names?model=thomas&count=" + (NameGenServer.MAX_COUNT + 1))
+				.getResponseCode());
+	}
+
+	@Test
+	public void get_tooLongNames_returns400() throws IOException {
+		Assert.assertEquals(400, open("/names?model=thomas&max=" + (NameGenServer.MAX_LENGTH + 1))
+				.getResponseCode());
+	}
+
+	@Test
+	public void get_failedLoad_returns503() throws IOException {
+		server.stop(0);
+		File annaFile = File.createTempFile("namegen", ".bin");
+		annaFile.deleteOnExit();
+		MarkovModel anna = new MarkovModel(3, 0f, ULocale.GERMAN);
+		anna.update("anna");
+		BinaryModelFormat.write(anna.build(Pruning.NONE), annaFile.toPath());
+		Map<String, Path> files = new LinkedHashMap<>();
+		files.put("thomas", modelFile.toPath());
+		files.put("anna", annaFile.toPath());
+		// Loading anna evicts thomas, so the broken file is read on the next request.
+		server = new NameGenServer(files, 1, new InetSocketAddress("localhost", 0));
+		server.start();
+		Files.write(modelFile.toPath(), new byte[] { 1, 2, 3 });
+
+		Assert.assertEquals(503, open("/names?model=thomas").getResponseCode());
+		Assert.assertEquals(200, open("/names?model=anna").getResponseCode());
+	}
+
+	@Test
+	public void get_models_listsIds() throws IOException {
+		HttpURLConnection connection = open("/models");
+		Assert.assertEquals(200, connection.getResponseCode());
+		Assert.assertEquals("[\"thomas\"]", new String(read(connection.getInputStream()), StandardCharsets.UTF_8));
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		URL url = new URL("http", "localhost", server.getAddress().getPort(), path);
+		return (HttpURLConnection) url.openConnection();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = input.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+}
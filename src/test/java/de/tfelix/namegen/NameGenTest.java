@@ -3,9 +3,18 @@ package de.tfelix.namegen;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.NameConstraints;
 import de.tfelix.namegen.model.RuntimeModel;
 import org.junit.Assert;
 import org.junit.Test;
@@ -58,4 +67,95 @@ public class NameGenTest {
 		logger.info("The model that stayed in memory produced a name {}", name2);
 		Assert.assertEquals(gen.getName(), generator2.getName());
 	}
+
+	@Test
+	public void getNames_parallel_ok() {
+		NameGen gen = new NameGen(trainedModel(), new Random(1));
+		String[] names = gen.getNames(1000);
+		Assert.assertEquals(1000, names.length);
+		for (String name : names) {
+			Assert.assertNotNull(name);
+		}
+		Assert.assertEquals(10000, gen.parallelNames(10000).filter(name -> name != null).count());
+	}
+
+	@Test
+	public void names_seededRandom_isReproducible() {
+		NameGen first = new NameGen(trainedModel(), new Random(5));
+		NameGen second = new NameGen(trainedModel(), new Random(5));
+		Assert.assertArrayEquals(first.names(50).toArray(), second.names(50).toArray());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void names_seedAndIndexRange_matchesWholeSequence() {
+		NameGen<Random> gen = new NameGen<>(trainedModel(), new Random(1));
+		Object[] sequence = gen.names(11L, 0, 200).toArray();
+		Object[] shard = gen.names(11L, 150, 200).toArray();
+		Assert.assertArrayEquals(Arrays.copyOfRange(sequence, 150, 200), shard);
+		Assert.assertArrayEquals(sequence, gen.names(11L, 0, 200).parallel().toArray());
+	}
+
+	@Test
+	public void getName_constraints_areAlwaysMet() {
+		NameGen gen = new NameGen(trainedModel(), new Random(3));
+		NameConstraints constraints = new NameConstraints(5, 8, "ka", "");
+		for (int i = 0; i < 1000; i++) {
+			String name = gen.getName(constraints);
+			Assert.assertTrue(name, name.length() >= 5 && name.length() <= 8);
+			Assert.assertTrue(name, name.startsWith("ka"));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getName_concurrent_usesRandomOfCallingThread() throws Exception {
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		RuntimeModel<Random> model = trainedModel();
+		NameGen<Random> gen = NameGen.perThread(() -> model, () -> {
+			threads.add(Thread.currentThread());
+			return new Random(Thread.currentThread().getId());
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(() -> gen.getName()));
+			}
+			for (Future<?> result : results) {
+				Assert.assertNotNull(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertFalse(threads.contains(Thread.currentThread()));
+		Assert.assertFalse(threads.isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void concurrent_manyThreads_generatesNames() throws Exception {
+		NameGen<Random> gen = NameGen.concurrent((RuntimeModel<Random>) trainedModel());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String[]>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(() -> gen.names(1000).toArray(String[]::new)));
+			}
+			for (Future<String[]> result : results) {
+				for (String name : result.get()) {
+					Assert.assertNotNull(name);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private RuntimeModel trainedModel() {
+		NameGenGenerator trainer = new NameGenGenerator(3, 0.001f, 0.02f, ULocale.ENGLISH);
+		File morrowNames = new File(getClass().getClassLoader().getResource("morrow_names.txt").getFile());
+		trainer.analyze(morrowNames.getAbsolutePath());
+		return trainer.build();
+	}
 }
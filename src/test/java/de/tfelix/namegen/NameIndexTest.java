@@ -0,0 +1,123 @@
+package de.tfelix.namegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.RuntimeModel;
+import de.tfelix.namegen.model.TestModels;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NameIndexTest {
+
+	@Test
+	public void contains_addedNames_true() {
+		NameIndex index = index("thomas", "tom", "thomas", "anna", "annabelle");
+		Assert.assertEquals(4, index.size());
+		Assert.assertTrue(index.contains("thomas"));
+		Assert.assertTrue(index.contains("Tom"));
+		Assert.assertTrue(index.contains("anna"));
+		Assert.assertTrue(index.contains("annabelle"));
+		Assert.assertFalse(index.contains("thom"));
+		Assert.assertFalse(index.contains("annab"));
+		Assert.assertFalse(index.contains("tomas"));
+		Assert.assertFalse(index.contains(""));
+	}
+
+	@Test
+	public void contains_supplementaryCasedScript_ignoresCase() {
+		// Deseret letters are outside the Basic Multilingual Plane and have cases.
+		NameIndex index = index("\uD801\uDC14\uD801\uDC2F\uD801\uDC45", "\uD801\uDC3C\uD801\uDC2F");
+		Assert.assertEquals(2, index.size());
+		Assert.assertTrue(index.contains("\uD801\uDC3C\uD801\uDC2F\uD801\uDC45"));
+		Assert.assertTrue(index.contains("\uD801\uDC14\uD801\uDC2F\uD801\uDC45"));
+		Assert.assertTrue(index.contains("\uD801\uDC14\uD801\uDC07"));
+		Assert.assertFalse(index.contains("\uD801\uDC14"));
+	}
+
+	@Test
+	public void build_sharedSuffixes_areMerged() {
+		NameIndex index = index("taps", "tops", "tap", "top");
+		// root -t-> 1 -a,o-> 2 -p-> 3 (end) -s-> 4 (end)
+		Assert.assertEquals(5, index.stateCount());
+		Assert.assertEquals(5, index.edgeCount());
+	}
+
+	@Test
+	public void contains_randomNames_equalsSet() {
+		Random random = new Random(11);
+		NameIndexBuilder builder = new NameIndexBuilder();
+		Set<String> names = new HashSet<>();
+		for (int i = 0; i < 20000; i++) {
+			String name = randomName(random);
+			builder.add(name);
+			names.add(name);
+		}
+		NameIndex index = builder.build();
+		Assert.assertEquals(names.size(), index.size());
+		for (String name : names) {
+			Assert.assertTrue(index.contains(name));
+		}
+		for (int i = 0; i < 20000; i++) {
+			String name = randomName(random);
+			Assert.assertEquals(names.contains(name), index.contains(name));
+		}
+	}
+
+	@Test
+	public void read_writtenIndex_containsSameNames() throws IOException {
+		NameIndex index = index("thomas", "tom", "anna");
+		File file = File.createTempFile("test_names", ".idx");
+		file.deleteOnExit();
+		index.write(file.toPath());
+		Assert.assertEquals(index.byteSize(), file.length());
+
+		NameIndex read = NameIndex.read(file.toPath());
+		Assert.assertEquals(3, read.size());
+		Assert.assertEquals(index.stateCount(), read.stateCount());
+		Assert.assertTrue(read.contains("thomas"));
+		Assert.assertTrue(read.contains("tom"));
+		Assert.assertFalse(read.contains("tomas"));
+	}
+
+	@Test
+	public void getName_excluded_returnsOtherName() {
+		NameGen<Random> nameGen = new NameGen<>(TestModels.trained(3, 0f, ULocale.GERMAN, "anna", "otto"),
+				new Random(5));
+		nameGen.setExcluded(index("anna"));
+		for (int i = 0; i < 50; i++) {
+			Assert.assertEquals("otto", nameGen.getName());
+		}
+		for (String name : nameGen.getNames(50)) {
+			Assert.assertEquals("otto", name);
+		}
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void getName_everyNameExcluded_throws() {
+		NameGen<Random> nameGen = new NameGen<>(TestModels.trained(3, 0f, ULocale.GERMAN, "thomas"), new Random(5));
+		nameGen.setExcluded(index("thomas"));
+		nameGen.getName();
+	}
+
+	private static String randomName(Random random) {
+		char[] name = new char[1 + random.nextInt(6)];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = (char) ('a' + random.nextInt(4));
+		}
+		return new String(name);
+	}
+
+	private static NameIndex index(String... names) {
+		NameIndexBuilder builder = new NameIndexBuilder();
+		for (String name : names) {
+			builder.add(name);
+		}
+		return builder.build();
+	}
+}
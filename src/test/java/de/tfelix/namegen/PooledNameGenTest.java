@@ -0,0 +1,140 @@
+package de.tfelix.namegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.RuntimeModel;
+import de.tfelix.namegen.model.TestModels;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PooledNameGenTest {
+
+	private final RuntimeModel<Random> thomas = TestModels.trained(3, 0f, ULocale.GERMAN, "thomas");
+
+	@Test
+	public void getName_afterFill_takesFromPool() throws InterruptedException {
+		try (PooledNameGen pool = new NameGen<>(thomas, new Random(3)).pooled(64, 16)) {
+			awaitAvailable(pool, 64);
+			for (int i = 0; i < 40; i++) {
+				Assert.assertEquals("thomas", pool.getName());
+			}
+			Assert.assertEquals(0, pool.getMisses());
+		}
+	}
+
+	@Test
+	public void getName_aboveWatermark_doesNotRefill() throws InterruptedException {
+		try (PooledNameGen pool = new PooledNameGen(new NameGen<>(thomas, new Random(3)), 64, 16)) {
+			awaitAvailable(pool, 64);
+			long refills = pool.getRefills();
+			for (int i = 0; i < 48; i++) {
+				pool.getName();
+			}
+			Assert.assertEquals(refills, pool.getRefills());
+			// Only the next name drops the pool below the watermark. Had it been refilled at the watermark, the
+			// pool would stay one name short of full, or the refill thread would have woken up twice.
+			pool.getName();
+			awaitAvailable(pool, 64);
+			Assert.assertEquals(refills + 1, pool.getRefills());
+		}
+	}
+
+	@Test
+	public void getName_belowWatermark_refills() throws InterruptedException {
+		try (PooledNameGen pool = new PooledNameGen(new NameGen<>(thomas, new Random(3)), 64, 16)) {
+			awaitAvailable(pool, 64);
+			long refills = pool.getRefills();
+			for (int i = 0; i < 60; i++) {
+				pool.getName();
+			}
+			for (int i = 0; i < 500 && pool.available() < 16; i++) {
+				Thread.sleep(10);
+			}
+			Assert.assertTrue(pool.available() >= 16);
+			Assert.assertEquals(refills + 1, pool.getRefills());
+		}
+	}
+
+	@Test
+	public void getName_afterClose_generatesDirectly() {
+		PooledNameGen pool = new PooledNameGen(new NameGen<>(thomas, new Random(3)), 4, 1);
+		pool.close();
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals("thomas", pool.getName());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_watermarkAboveCapacity_throws() {
+		new PooledNameGen(new NameGen<>(thomas, new Random(3)), 4, 8);
+	}
+
+	@Test
+	public void ring_offerAndPoll_keepsOrder() {
+		NameRing ring = new NameRing(3);
+		Assert.assertEquals(4, ring.capacity());
+		for (int i = 0; i < 4; i++) {
+			Assert.assertTrue(ring.offer("n" + i));
+		}
+		Assert.assertFalse(ring.offer("full"));
+		Assert.assertEquals(4, ring.size());
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals("n" + i, ring.poll());
+		}
+		Assert.assertNull(ring.poll());
+		Assert.assertEquals(0, ring.size());
+	}
+
+	@Test
+	public void ring_concurrently_handsOutEveryNameOnce() throws Exception {
+		NameRing ring = new NameRing(64);
+		int count = 100000;
+		Set<String> taken = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> consumers = new ArrayList<>();
+			for (int c = 0; c < 3; c++) {
+				consumers.add(executor.submit(() -> {
+					int polled = 0;
+					while (taken.size() < count) {
+						String name = ring.poll();
+						if (name != null) {
+							Assert.assertTrue(taken.add(name));
+							polled++;
+						}
+					}
+					return polled;
+				}));
+			}
+			executor.submit(() -> {
+				for (int i = 0; i < count; i++) {
+					while (!ring.offer(Integer.toString(i))) {
+						Thread.yield();
+					}
+				}
+			}).get();
+			int polled = 0;
+			for (Future<Integer> consumer : consumers) {
+				polled += consumer.get();
+			}
+			Assert.assertEquals(count, polled);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void awaitAvailable(PooledNameGen pool, int names) throws InterruptedException {
+		for (int i = 0; i < 500 && pool.available() < names; i++) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(names, pool.available());
+	}
+}
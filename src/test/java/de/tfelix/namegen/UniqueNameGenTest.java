@@ -0,0 +1,52 @@
+package de.tfelix.namegen;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.model.RuntimeModel;
+import de.tfelix.namegen.model.TestModels;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UniqueNameGenTest {
+
+	@Test
+	public void names_parallel_areDistinct() {
+		RuntimeModel<Random> model = TestModels.trained(2, 0.001f, ULocale.GERMAN, "anna", "annika", "anton", "bert",
+				"berta");
+		UniqueNameGen gen = new UniqueNameGen(new NameGen<>(model, new Random(3)), 2000, 0.001, 1000);
+		List<String> names = gen.names(300).parallel().collect(Collectors.toList());
+		Set<String> distinct = new HashSet<>(names);
+		Assert.assertEquals(300, names.size());
+		Assert.assertEquals(300, distinct.size());
+		// A parallel stream might draw a few more names than it needs.
+		Assert.assertTrue(gen.getCount() >= 300);
+	}
+
+	@Test
+	public void next_singleName_exhausts() {
+		RuntimeModel<Random> model = TestModels.trained(2, 0f, ULocale.GERMAN, "thomas");
+		UniqueNameGen gen = new UniqueNameGen(new NameGen<>(model, new Random(3)), 10, 0.01, 20);
+		Assert.assertEquals("thomas", gen.next());
+		try {
+			gen.next();
+			Assert.fail("Only a single name can be generated.");
+		} catch (NoSuchElementException e) {
+			Assert.assertTrue(gen.isExhausted());
+		}
+	}
+
+	@Test
+	public void bloomFilter_add_rejectsDuplicates() {
+		ConcurrentBloomFilter filter = new ConcurrentBloomFilter(1000, 0.01);
+		Assert.assertTrue(filter.add("name"));
+		Assert.assertFalse(filter.add("name"));
+		Assert.assertTrue(filter.mightContain("name"));
+		Assert.assertFalse(filter.mightContain("other"));
+	}
+}
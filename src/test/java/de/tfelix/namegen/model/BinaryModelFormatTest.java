@@ -0,0 +1,127 @@
+package de.tfelix.namegen.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibm.icu.util.ULocale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryModelFormatTest {
+
+	@Test
+	public void read_writtenModel_generatesSameNames() throws IOException {
+		RuntimeModel<Random> model = trainedModel();
+		File file = File.createTempFile("test_model", ".bin");
+		file.deleteOnExit();
+		BinaryModelFormat.write(model, file.toPath());
+
+		Assert.assertTrue(BinaryModelFormat.isBinary(file.toPath()));
+		RuntimeModel<Random> read = BinaryModelFormat.read(file.toPath());
+		Assert.assertEquals(model.order, read.order);
+		Assert.assertEquals(model.language_code, read.language_code);
+
+		Random expected = new Random(7);
+		Random actual = new Random(7);
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(model.apply(expected), read.apply(actual));
+		}
+	}
+
+	@Test
+	public void read_writtenModel_exportsAsJson() throws IOException {
+		RuntimeModel<Random> model = trainedModel();
+		File file = File.createTempFile("test_model", ".bin");
+		file.deleteOnExit();
+		BinaryModelFormat.write(model, file.toPath());
+		RuntimeModel<Random> read = BinaryModelFormat.read(file.toPath());
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		RuntimeModel<Random> exported = objectMapper.readValue(objectMapper.writeValueAsString(read),
+				RuntimeModel.class);
+		Assert.assertEquals(model.transitions.keySet(), exported.transitions.keySet());
+		Assert.assertEquals(model.apply(new Random(3)), exported.apply(new Random(3)));
+	}
+
+	@Test
+	public void read_quantizedModel_generatesSameNames() throws IOException {
+		for (int bits : new int[] { 8, 16 }) {
+			RuntimeModel<Random> model = trainedModel().quantize(bits);
+			File file = File.createTempFile("test_model", ".bin");
+			file.deleteOnExit();
+			BinaryModelFormat.write(model, file.toPath());
+			Assert.assertEquals(BinaryModelFormat.size(model), file.length());
+			Assert.assertTrue(file.length() < BinaryModelFormat.size(trainedModel()));
+
+			RuntimeModel<Random> read = BinaryModelFormat.read(file.toPath());
+			Random expected = new Random(7);
+			Random actual = new Random(7);
+			for (int i = 0; i < 100; i++) {
+				Assert.assertEquals(model.apply(expected), read.apply(actual));
+			}
+		}
+	}
+
+	@Test
+	public void quantize_unambiguousModel_generatesSameNames() {
+		RuntimeModel<Random> model = trainedModel();
+		RuntimeModel<Random> quantized = model.quantize(16);
+		Random expected = new Random(5);
+		Random actual = new Random(5);
+		int same = 0;
+		for (int i = 0; i < 100; i++) {
+			if (model.apply(expected).equals(quantized.apply(actual))) {
+				same++;
+			}
+		}
+		// Only positions within 1/65535 of a boundary pick differently.
+		Assert.assertTrue(same > 95);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void read_supplementaryCharacters_generatesSameNames() throws IOException {
+		MarkovModel trainableModel = new MarkovModel(2, 0.00001f, ULocale.CHINESE);
+		for (String name : new String[] { "🐉龙", "🐉𠀀", "王小明", "李🐼" }) {
+			trainableModel.update(name);
+		}
+		for (RuntimeModel<Random> model : new RuntimeModel[] { trainableModel.build(),
+				trainableModel.build().quantize(8) }) {
+			File file = File.createTempFile("test_model", ".bin");
+			file.deleteOnExit();
+			BinaryModelFormat.write(model, file.toPath());
+			Assert.assertEquals(BinaryModelFormat.size(model), file.length());
+
+			RuntimeModel<Random> read = BinaryModelFormat.read(file.toPath());
+			Assert.assertEquals(model.score("🐉𠀀"), read.score("🐉𠀀"), 0);
+			Assert.assertTrue(read.transitions.containsKey("李🐼"));
+			Random expected = new Random(7);
+			Random actual = new Random(7);
+			for (int i = 0; i < 100; i++) {
+				Assert.assertEquals(model.apply(expected), read.apply(actual));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void read_jsonFile_throws() throws IOException {
+		File file = File.createTempFile("test_model", ".json");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "{\"order\": 3}".getBytes(StandardCharsets.UTF_8));
+		Assert.assertFalse(BinaryModelFormat.isBinary(file.toPath()));
+		BinaryModelFormat.read(file.toPath());
+	}
+
+	@SuppressWarnings("unchecked")
+	private RuntimeModel<Random> trainedModel() {
+		MarkovModel trainableModel = new MarkovModel(3, 0.001f, ULocale.ENGLISH);
+		for (String name : new String[] { "thomas", "thorsten", "anna", "annika", "tom", "jürgen" }) {
+			trainableModel.update(name);
+		}
+		return trainableModel.build();
+	}
+}
@@ -0,0 +1,100 @@
+package de.tfelix.namegen.model;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ibm.icu.util.ULocale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContextCountsTest {
+
+	private static final char DELIMITER = SymbolManager.getEndSymbol();
+
+	@Test
+	public void update_name_countsAllSubContexts() {
+		ContextCounts counts = new ContextCounts(2);
+		counts.update("aab", null);
+		Map<String, Map<String, Float>> distributions = distributions(counts);
+
+		Assert.assertEquals(7, distributions.size());
+		Assert.assertEquals(single('a'), distributions.get("" + DELIMITER + DELIMITER));
+		Assert.assertEquals(single('a'), distributions.get("" + DELIMITER));
+		Assert.assertEquals(single('a'), distributions.get(DELIMITER + "a"));
+		Assert.assertEquals(single('b'), distributions.get("aa"));
+		Assert.assertEquals(single(DELIMITER), distributions.get("ab"));
+		Assert.assertEquals(single(DELIMITER), distributions.get("b"));
+		Map<String, Float> afterA = new HashMap<>();
+		afterA.put("a", 0.5f);
+		afterA.put("b", 0.5f);
+		Assert.assertEquals(afterA, distributions.get("a"));
+	}
+
+	@Test
+	public void update_supplementaryCharacters_areSingleSymbols() {
+		ContextCounts counts = new ContextCounts(2);
+		counts.update("🐉a🐉", null);
+		Map<String, Map<String, Float>> distributions = distributions(counts);
+		Map<String, Float> dragon = new HashMap<>();
+		dragon.put("🐉", 1f);
+		Assert.assertEquals(dragon, distributions.get("" + DELIMITER + DELIMITER));
+		Assert.assertEquals(dragon, distributions.get("🐉a"));
+		Assert.assertEquals(single(DELIMITER), distributions.get("a🐉"));
+		Assert.assertEquals(7, distributions.size());
+	}
+
+	@Test
+	public void update_touched_marksChangedContexts() {
+		ContextCounts counts = new ContextCounts(2);
+		counts.update("ab", null);
+		BitSet touched = new BitSet();
+		counts.update("b", touched);
+		for (int node = touched.nextSetBit(0); node >= 0; node = touched.nextSetBit(node + 1)) {
+			String context = counts.context(node);
+			Assert.assertTrue(context, context.equals("" + DELIMITER + DELIMITER) || context.equals("" + DELIMITER)
+					|| context.equals(DELIMITER + "b") || context.equals("b"));
+		}
+		Assert.assertEquals(4, touched.cardinality());
+	}
+
+	@Test
+	public void merge_partialCounts_equalsSequentialCounts() {
+		ContextCounts sequential = new ContextCounts(3);
+		ContextCounts first = new ContextCounts(3);
+		ContextCounts second = new ContextCounts(3);
+		String[] names = { "thomas", "tamara", "anna", "hannah", "otto" };
+		for (int i = 0; i < names.length; i++) {
+			sequential.update(names[i], null);
+			(i % 2 == 0 ? first : second).update(names[i], null);
+		}
+		first.merge(second);
+		Assert.assertEquals(distributions(sequential), distributions(first));
+	}
+
+	@Test
+	public void update_manyNames_growsTables() {
+		ContextCounts counts = new ContextCounts(4);
+		for (int i = 0; i < 2000; i++) {
+			counts.update(Integer.toString(i, 36), null);
+		}
+		Map<String, Map<String, Float>> distributions = distributions(counts);
+		Assert.assertEquals(counts.nodeCount() - 1, distributions.size());
+		Assert.assertEquals(single(DELIMITER), distributions.get("zz"));
+	}
+
+	private static Map<String, Map<String, Float>> distributions(ContextCounts counts) {
+		Map<String, Map<String, Float>> distributions = new HashMap<>();
+		for (int node = 1; node < counts.nodeCount(); node++) {
+			Transition transition = counts.build(node, 0f, ULocale.ENGLISH);
+			distributions.put(counts.context(node), new HashMap<>(transition.getDistribution()));
+		}
+		return distributions;
+	}
+
+	private static Map<String, Float> single(char c) {
+		Map<String, Float> distribution = new HashMap<>();
+		distribution.put(String.valueOf(c), 1f);
+		return distribution;
+	}
+}
@@ -0,0 +1,110 @@
+package de.tfelix.namegen.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ibm.icu.util.ULocale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContextTrieTest {
+
+	private final Transition fallback = transition('#');
+
+	@Test
+	public void find_emptyTrie_returnsFallback() {
+		ContextTrie trie = ContextTrie.compile(3, new HashMap<String, Transition>(), fallback, new int[0]);
+		Assert.assertEquals('#', picked(trie, "abc", 3));
+	}
+
+	@Test
+	public void find_longestSuffix_ok() {
+		ContextTrie trie = ContextTrie.compile(3, suffixes(), fallback, new int[0]);
+
+		Assert.assertEquals('2', picked(trie, "abc", 3));
+		Assert.assertEquals('3', picked(trie, "xbc", 3));
+		Assert.assertEquals('1', picked(trie, "acx", 2));
+		Assert.assertEquals('#', picked(trie, "bca", 3));
+	}
+
+	@Test
+	public void find_skipsContextsWithoutTransition() {
+		Map<String, Transition> transitions = new HashMap<>();
+		transitions.put("abc", transition('3'));
+		ContextTrie trie = ContextTrie.compile(3, transitions, fallback, new int[0]);
+
+		Assert.assertEquals('3', picked(trie, "abc", 3));
+		Assert.assertEquals('#', picked(trie, "xbc", 3));
+	}
+
+	@Test
+	public void find_beforeStart_usesStartSymbols() {
+		Map<String, Transition> transitions = new HashMap<>();
+		transitions.put(SymbolManager.getStartSymbol(3), transition('s'));
+		transitions.put(SymbolManager.getStartSymbol(2) + "a", transition('a'));
+		ContextTrie trie = ContextTrie.compile(3, transitions, fallback, new int[0]);
+
+		Assert.assertEquals('s', picked(trie, "", 0));
+		Assert.assertEquals('a', picked(trie, "ab", 1));
+	}
+
+	@Test
+	public void writeTo_readFrom_roundTrip() {
+		ContextTrie trie = ContextTrie.compile(3, suffixes(), fallback, new int[0]);
+		ByteBuffer buffer = ByteBuffer.allocate((int) trie.byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+		trie.writeTo(buffer);
+		Assert.assertFalse(buffer.hasRemaining());
+		buffer.flip();
+		ContextTrie read = ContextTrie.readFrom(3, buffer);
+
+		Assert.assertEquals(trie.size(), read.size());
+		Assert.assertEquals('2', picked(read, "abc", 3));
+		Assert.assertEquals('3', picked(read, "xbc", 3));
+		Assert.assertEquals('#', picked(read, "bca", 3));
+		Assert.assertEquals(suffixes().keySet(), read.asMap().keySet());
+		Assert.assertEquals(transition('3').getDistribution(), read.asMap().get("xbc").getDistribution());
+	}
+
+	@Test
+	public void compile_bigAlphabet_storesSymbolsInTwoBytes() {
+		ContextTrie small = ContextTrie.compile(3, suffixes(), fallback, new int[0]);
+		Assert.assertEquals(1, small.symbols().symbolBytes());
+
+		int[] alphabet = Alphabet.of(ULocale.CHINESE);
+		Assert.assertTrue(alphabet.length > 256);
+		ContextTrie big = ContextTrie.compile(3, suffixes(), fallback, alphabet);
+		Assert.assertEquals(2, big.symbols().symbolBytes());
+		Assert.assertTrue(big.byteSize() > small.byteSize());
+		ByteBuffer buffer = ByteBuffer.allocate((int) big.byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+		big.writeTo(buffer);
+		Assert.assertFalse(buffer.hasRemaining());
+		buffer.flip();
+		ContextTrie read = ContextTrie.readFrom(3, buffer);
+		Assert.assertEquals('3', picked(read, "xbc", 3));
+		Assert.assertArrayEquals(alphabet, read.alphabetCodePoints());
+	}
+
+	private Map<String, Transition> suffixes() {
+		Map<String, Transition> transitions = new HashMap<>();
+		transitions.put("c", transition('1'));
+		transitions.put("bc", transition('2'));
+		transitions.put("xbc", transition('3'));
+		return transitions;
+	}
+
+	private char picked(ContextTrie trie, String text, int end) {
+		return (char) trie.symbols().codePoint(trie.pick(trie.find(ids(trie, text), 0, end), 0.5f));
+	}
+
+	private static int[] ids(ContextTrie trie, String text) {
+		return text.codePoints().map(trie.symbols()::id).toArray();
+	}
+
+	private Transition transition(char output) {
+		Transition transition = new Transition(0f, ULocale.ENGLISH);
+		transition.update(output);
+		return transition.build();
+	}
+}
@@ -0,0 +1,142 @@
+package de.tfelix.namegen.model;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.icu.util.ULocale;
+import de.tfelix.namegen.NameGen;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LiveModelTest {
+
+	private final Random rand = new Random(1);
+
+	@Test
+	public void constructor_trainedModel_publishesObservations() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		LiveModel<Random> live = new LiveModel<>(model);
+		Assert.assertEquals("thomas", live.get().apply(rand));
+		Assert.assertFalse(live.isDirty());
+	}
+
+	@Test
+	public void update_beforePublish_keepsSnapshot() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		LiveModel<Random> live = new LiveModel<>(model);
+		RuntimeModel<Random> snapshot = live.get();
+		live.update("xyz");
+		Assert.assertTrue(live.isDirty());
+		Assert.assertSame(snapshot, live.get());
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals("thomas", live.get().apply(rand));
+		}
+	}
+
+	@Test
+	public void publish_afterUpdate_generatesNewNames() {
+		LiveModel<Random> live = new LiveModel<>(new MarkovModel(3, 0f, ULocale.GERMAN));
+		live.update("xyz");
+		RuntimeModel<Random> snapshot = live.publish();
+		Assert.assertSame(snapshot, live.get());
+		Assert.assertEquals("xyz", snapshot.apply(rand));
+		Assert.assertSame(snapshot, live.publish());
+	}
+
+	@Test
+	public void publish_withinMinInterval_keepsSnapshot() {
+		LiveModel<Random> live = new LiveModel<>(new MarkovModel(3, 0f, ULocale.GERMAN));
+		live.update("xyz");
+		RuntimeModel<Random> snapshot = live.publish();
+		live.setMinInterval(1, TimeUnit.HOURS);
+		live.update("anna");
+		Assert.assertSame(snapshot, live.publish());
+		Assert.assertTrue(live.isDirty());
+		live.setMinInterval(0, TimeUnit.HOURS);
+		Assert.assertNotSame(snapshot, live.publish());
+		Assert.assertFalse(live.isDirty());
+	}
+
+	@Test
+	public void publish_changedContexts_matchesFullBuild() {
+		MarkovModel live = new MarkovModel(2, 0f, ULocale.GERMAN);
+		MarkovModel full = new MarkovModel(2, 0f, ULocale.GERMAN);
+		live.update("anna");
+		full.update("anna");
+		LiveModel<Random> model = new LiveModel<>(live);
+		model.update("hanna");
+		full.update("hanna");
+		RuntimeModel<Random> published = model.publish();
+		RuntimeModel<Random> built = full.build();
+		for (int i = 0; i < 100; i++) {
+			Random a = new Random(i);
+			Random b = new Random(i);
+			Assert.assertEquals(built.apply(a), published.apply(b));
+		}
+	}
+
+	@Test
+	public void publish_whileUpdating_publishesAllNames() throws Exception {
+		MarkovModel full = new MarkovModel(2, 0f, ULocale.GERMAN);
+		LiveModel<Random> live = new LiveModel<>(new MarkovModel(2, 0f, ULocale.GERMAN));
+		String[] names = { "anna", "hanna", "johanna", "marianne", "annette" };
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> updates = executor.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					live.update(names[i % names.length]);
+				}
+			});
+			while (!updates.isDone()) {
+				live.publish();
+			}
+			updates.get();
+		} finally {
+			executor.shutdownNow();
+		}
+		for (int i = 0; i < 200; i++) {
+			full.update(names[i % names.length]);
+		}
+		RuntimeModel<Random> published = live.publish();
+		Assert.assertFalse(live.isDirty());
+		RuntimeModel<Random> built = full.build();
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(built.apply(new Random(i)), published.apply(new Random(i)));
+		}
+	}
+
+	@Test
+	public void nameGen_liveModel_usesLatestSnapshot() {
+		LiveModel<Random> live = new LiveModel<>(new MarkovModel(3, 0f, ULocale.GERMAN));
+		NameGen<Random> nameGen = new NameGen<>(live, rand);
+		Assert.assertEquals("", nameGen.getName());
+		live.update("anna");
+		live.publish();
+		Assert.assertEquals("anna", nameGen.getName());
+	}
+
+	@Test
+	public void publishEvery_scheduled_publishesUpdates() throws Exception {
+		LiveModel<Random> live = new LiveModel<>(new MarkovModel(3, 0f, ULocale.GERMAN));
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try {
+			ScheduledFuture<?> publishing = live.publishEvery(executor, 10, TimeUnit.MILLISECONDS);
+			live.update("anna");
+			long deadline = System.currentTimeMillis() + 5000;
+			while (live.isDirty() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			publishing.cancel(false);
+			Assert.assertEquals("anna", live.get().apply(rand));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
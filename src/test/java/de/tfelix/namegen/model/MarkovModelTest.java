@@ -1,6 +1,13 @@
 package de.tfelix.namegen.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 import com.ibm.icu.text.UnicodeSet;
@@ -61,4 +68,323 @@ public class MarkovModelTest {
             fail("It is too unlikely that two random results would both be exactly the same as the training data.");
         }
     }
+
+	@Test
+	public void apply_intoBuffers_matchesString() throws Exception {
+		TrainableModel trainableModel = new MarkovModel(3, 0f, ULocale.GERMAN);
+		String name = "thomas";
+		trainableModel.update(name);
+		RuntimeModel generator = trainableModel.build();
+
+		StringBuilder builder = new StringBuilder("x");
+		generator.apply(rand, builder);
+		Assert.assertEquals("x" + name, builder.toString());
+
+		char[] chars = new char[10];
+		int length = generator.apply(rand, chars, 2);
+		Assert.assertEquals(name, new String(chars, 2, length));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void apply_arrayTooSmall_throws() {
+		TrainableModel trainableModel = new MarkovModel(3, 0f, ULocale.GERMAN);
+		trainableModel.update("thomas");
+		RuntimeModel generator = trainableModel.build();
+		generator.apply(rand, new char[6], 1);
+	}
+
+	@Test
+	public void merge_partialModels_equalsSequentialTraining() {
+		String[] names = { "thomas", "thorsten", "anna", "annika", "tom" };
+		MarkovModel sequential = new MarkovModel(3, 0.001f, ULocale.GERMAN);
+		MarkovModel first = new MarkovModel(3, 0.001f, ULocale.GERMAN);
+		TrainableModel second = first.createEmpty();
+		for (int i = 0; i < names.length; i++) {
+			sequential.update(names[i]);
+			(i % 2 == 0 ? first : second).update(names[i]);
+		}
+		first.merge(second);
+
+		RuntimeModel expected = sequential.build();
+		RuntimeModel merged = first.build();
+		Assert.assertEquals(expected.transitions.keySet(), merged.transitions.keySet());
+		for (Object context : expected.transitions.keySet()) {
+			Assert.assertEquals(((Transition) expected.transitions.get(context)).getDistribution(),
+					((Transition) merged.transitions.get(context)).getDistribution());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void merge_differentOrder_throws() {
+		new MarkovModel(3, 0f, ULocale.GERMAN).merge(new MarkovModel(2, 0f, ULocale.GERMAN));
+	}
+
+	@Test
+	public void report_noPruning_keepsEverything() {
+		MarkovModel model = namesModel();
+		PruningReport report = model.report(Pruning.NONE);
+		Assert.assertEquals(report.getTotalContextsBefore(), report.getTotalContextsAfter());
+		Assert.assertEquals(model.build().transitions.size(), report.getTotalContextsAfter());
+		Assert.assertEquals(0.0, report.getEntropyLoss(), 1e-9);
+		Assert.assertTrue(report.getCrossEntropy() > 0);
+	}
+
+	@Test
+	public void build_minCount_removesRareLongContexts() {
+		MarkovModel model = namesModel();
+		Pruning pruning = new Pruning(2, Integer.MAX_VALUE, 0);
+		RuntimeModel pruned = model.build(pruning);
+		PruningReport report = model.report(pruning);
+
+		Assert.assertEquals(report.getTotalContextsAfter(), pruned.transitions.size());
+		Assert.assertTrue(report.getTotalContextsAfter() < report.getTotalContextsBefore());
+		Assert.assertEquals(report.getContextsBefore(1), report.getContextsAfter(1));
+		Assert.assertTrue(report.getEntropyLoss() > 0);
+		// "tho" was seen twice, "jür" only once.
+		Assert.assertTrue(pruned.transitions.containsKey("tho"));
+		Assert.assertFalse(pruned.transitions.containsKey("jür"));
+		Assert.assertTrue(pruned.transitions.containsKey("j"));
+	}
+
+	@Test
+	public void build_maxContextsPerOrder_limitsEveryLength() {
+		MarkovModel model = namesModel();
+		PruningReport report = model.report(new Pruning(1, 5, 0));
+		Assert.assertTrue(report.getContextsBefore(1) > 5);
+		Assert.assertEquals(report.getContextsBefore(1), report.getContextsAfter(1));
+		Assert.assertEquals(5, report.getContextsAfter(2));
+		Assert.assertEquals(5, report.getContextsAfter(3));
+	}
+
+	@Test
+	public void build_entropyThreshold_keepsOnlyInformativeContexts() {
+		MarkovModel model = new MarkovModel(2, 0f, ULocale.GERMAN);
+		// After "a" both "b" and "c" follow, but after "xa" always "b" and after "ya" always "c".
+		model.update("xab");
+		model.update("yac");
+		// "ab" is always followed by the end, just like "b".
+		PruningReport report = model.report(new Pruning(1, Integer.MAX_VALUE, 1e-3));
+		RuntimeModel pruned = model.build(new Pruning(1, Integer.MAX_VALUE, 1e-3));
+		Assert.assertTrue(pruned.transitions.containsKey("xa"));
+		Assert.assertTrue(pruned.transitions.containsKey("ya"));
+		Assert.assertFalse(pruned.transitions.containsKey("ab"));
+		Assert.assertEquals(0.0, report.getEntropyLoss(), 1e-9);
+		for (int i = 0; i < 20; i++) {
+			String name = pruned.apply(rand);
+			Assert.assertTrue(name, name.equals("xab") || name.equals("yac"));
+		}
+	}
+
+	private MarkovModel namesModel() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		for (String name : new String[] { "thomas", "thorsten", "anna", "annika", "tom", "jürgen" }) {
+			model.update(name);
+		}
+		return model;
+	}
+
+	@Test
+	public void apply_minLength_continuesPastDeadEnd() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		RuntimeModel generator = model.build();
+		for (int i = 0; i < 20; i++) {
+			String name = generator.apply(rand, new NameConstraints(8, 10));
+			Assert.assertTrue(name, name.length() >= 8 && name.length() <= 10);
+			Assert.assertTrue(name, name.startsWith("thomas"));
+		}
+	}
+
+	@Test
+	public void apply_maxLength_endsName() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		Assert.assertEquals("tho", model.build().apply(rand, new NameConstraints(0, 3)));
+	}
+
+	@Test
+	public void apply_prefixAndSuffix_boundName() {
+		MarkovModel model = new MarkovModel(2, 0f, ULocale.GERMAN);
+		model.update("anna");
+		model.update("hanna");
+		RuntimeModel generator = model.build();
+		Assert.assertEquals("hanna", generator.apply(rand, new NameConstraints(0, 10, "h", "")));
+		Assert.assertEquals("annas", generator.apply(rand, new NameConstraints(0, 10, "an", "s")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constraints_prefixTooLong_throws() {
+		new NameConstraints(0, 3, "thomas", "");
+	}
+
+	@Test
+	public void apply_capitalisedPrefix_continuesLowerCasedContext() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("karl");
+		model.update("thomas");
+		RuntimeModel generator = model.build();
+		for (int i = 0; i < 20; i++) {
+			Assert.assertEquals("Karl", generator.apply(rand, new NameConstraints(0, 10, "Ka", "")));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constraints_maxLengthTooBig_throws() {
+		new NameConstraints(0, NameConstraints.MAX_LENGTH + 1);
+	}
+
+	@Test
+	public void apply_maxLengthLimit_growsBufferOnlyAsNeeded() {
+		MarkovModel model = new MarkovModel(2, 0f, ULocale.GERMAN);
+		model.update("anna");
+		RuntimeModel generator = model.build();
+		NameConstraints constraints = new NameConstraints(0, NameConstraints.MAX_LENGTH, "", "");
+		Assert.assertEquals("anna", generator.apply(rand, constraints));
+		Assert.assertEquals(NameConstraints.MAX_LENGTH,
+				generator.apply(rand, new NameConstraints(NameConstraints.MAX_LENGTH, NameConstraints.MAX_LENGTH))
+						.length());
+	}
+
+	@Test
+	public void apply_seedAndIndex_isReproducible() {
+		RuntimeModel generator = TestModels.trained(2, 0.01f, ULocale.GERMAN,
+				"anna", "hanna", "johanna", "thomas", "tom");
+		Set<String> names = new HashSet<>();
+		for (long index = 0; index < 100; index++) {
+			String name = generator.apply(7L, index);
+			Assert.assertEquals(name, generator.apply(7L, index));
+			names.add(name);
+		}
+		Assert.assertTrue(names.size() > 10);
+		Assert.assertEquals(generator.apply(7L, 99), generator.apply(7L, 99));
+	}
+
+	@Test
+	public void apply_otherSeed_generatesOtherSequence() {
+		RuntimeModel generator = TestModels.trained(2, 0.01f, ULocale.GERMAN,
+				"anna", "hanna", "johanna", "thomas", "tom");
+		int same = 0;
+		for (long index = 0; index < 100; index++) {
+			if (generator.apply(7L, index).equals(generator.apply(8L, index))) {
+				same++;
+			}
+		}
+		Assert.assertTrue(same < 50);
+	}
+
+	@Test
+	public void apply_seedIndexAndConstraints_meetsConstraints() {
+		RuntimeModel generator = TestModels.trained(2, 0.01f, ULocale.GERMAN,
+				"anna", "hanna", "johanna", "thomas", "tom");
+		NameConstraints constraints = new NameConstraints(3, 6, "j", "");
+		for (long index = 0; index < 100; index++) {
+			String name = generator.apply(7L, index, constraints);
+			Assert.assertEquals(name, generator.apply(7L, index, constraints));
+			Assert.assertTrue(name, name.startsWith("j") && name.length() >= 3 && name.length() <= 6);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void mostProbable_deterministicContexts_returnsNamesByProbability() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("anna");
+		model.update("anna");
+		model.update("anna");
+		model.update("bert");
+		RuntimeModel<Random> generator = model.build();
+		List<ScoredName> names = generator.mostProbable(5);
+		Assert.assertEquals(2, names.size());
+		Assert.assertEquals("anna", names.get(0).getName());
+		Assert.assertEquals(0.75, names.get(0).getProbability(), 0.0001);
+		Assert.assertEquals("bert", names.get(1).getName());
+		Assert.assertEquals(0.25, names.get(1).getProbability(), 0.0001);
+		Assert.assertTrue(generator.mostProbable(5, 0, 3).isEmpty());
+		Assert.assertEquals(1, generator.mostProbable(1, 4, 4).size());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void mostProbable_withPrior_matchesMostFrequentSample() {
+		RuntimeModel<Random> generator = TestModels.trained(2, 0.01f, ULocale.GERMAN,
+				"anna", "hanna", "johanna", "thomas", "tom", "tom");
+		List<ScoredName> names = generator.mostProbable(20, 2, 8);
+		Assert.assertEquals(20, names.size());
+		Set<String> distinct = new HashSet<>();
+		for (int i = 0; i < names.size(); i++) {
+			String name = names.get(i).getName();
+			Assert.assertTrue(name, name.length() >= 2 && name.length() <= 8);
+			Assert.assertTrue(distinct.add(name));
+			if (i > 0) {
+				Assert.assertTrue(names.get(i - 1).getLogProbability() >= names.get(i).getLogProbability());
+			}
+		}
+		Map<String, Integer> counts = new HashMap<>();
+		Random random = new Random(4);
+		for (int i = 0; i < 100000; i++) {
+			counts.merge(generator.apply(random), 1, Integer::sum);
+		}
+		String mostFrequent = Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+		Assert.assertEquals(mostFrequent, generator.mostProbable(1).get(0).getName());
+		Assert.assertEquals(counts.get(mostFrequent) / 100000.0, generator.mostProbable(1).get(0).getProbability(),
+				0.01);
+	}
+
+	@Test
+	public void score_deterministicContexts_isLogProbability() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("anna");
+		model.update("anna");
+		model.update("anna");
+		model.update("bert");
+		RuntimeModel generator = model.build();
+		Assert.assertEquals(Math.log(0.75), generator.score("anna"), 0.0001);
+		Assert.assertEquals(Math.log(0.25), generator.score("Bert"), 0.0001);
+		Assert.assertEquals(Double.NEGATIVE_INFINITY, generator.score("ann"), 0);
+		Assert.assertEquals(Double.NEGATIVE_INFINITY, generator.score("xyz"), 0);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void score_mostProbableNames_matchesSearch() {
+		RuntimeModel<Random> generator = TestModels.trained(2, 0.01f, ULocale.GERMAN,
+				"anna", "hanna", "johanna", "thomas", "tom", "tom");
+		List<ScoredName> names = generator.mostProbable(50);
+		List<String> texts = new ArrayList<>();
+		for (ScoredName name : names) {
+			Assert.assertEquals(name.getName(), name.getLogProbability(), generator.score(name.getName()), 0.0001);
+			texts.add(name.getName());
+		}
+		double[] scores = generator.scoreAll(texts);
+		for (int i = 0; i < scores.length; i++) {
+			Assert.assertEquals(names.get(i).getLogProbability(), scores[i], 0.0001);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void apply_supplementaryCharacters_generatesWholeCharacters() {
+		MarkovModel model = new MarkovModel(2, 0f, ULocale.CHINESE);
+		model.update("🐉龙");
+		model.update("🐉𠀀");
+		RuntimeModel<Random> generator = model.build();
+		Set<String> expected = new HashSet<>();
+		expected.add("🐉龙");
+		expected.add("🐉𠀀");
+		Set<String> names = new HashSet<>();
+		Random random = new Random(3);
+		for (int i = 0; i < 50; i++) {
+			names.add(generator.apply(random));
+		}
+		Assert.assertEquals(expected, names);
+		Assert.assertEquals(Math.log(0.5), generator.score("🐉𠀀"), 0.0001);
+		Assert.assertEquals(Double.NEGATIVE_INFINITY, generator.score("🐉"), 0);
+		names.clear();
+		for (ScoredName name : generator.mostProbable(5)) {
+			names.add(name.getName());
+		}
+		Assert.assertEquals(expected, names);
+		String constrained = generator.apply(random, new NameConstraints(2, 2, "🐉", ""));
+		Assert.assertTrue(constrained, expected.contains(constrained));
+	}
 }
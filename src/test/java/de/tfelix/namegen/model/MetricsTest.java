@@ -0,0 +1,90 @@
+package de.tfelix.namegen.model;
+
+import java.util.Random;
+
+import com.ibm.icu.util.ULocale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+
+	private final Random rand = new Random(1);
+
+	@Test
+	public void apply_withMetrics_countsNamesAndSteps() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		RuntimeModel<Random> runtime = model.build(Pruning.NONE);
+		Metrics metrics = new Metrics();
+		runtime.setMetrics(metrics);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals("thomas", runtime.apply(rand));
+		}
+		Assert.assertEquals(10, metrics.getNames());
+		Assert.assertEquals(70, metrics.getSteps());
+		Assert.assertEquals(7, metrics.getAverageSteps(), 0.0001);
+		Assert.assertEquals(0, metrics.getBackoffs());
+		Assert.assertEquals(0, metrics.getFallbacks());
+		Assert.assertTrue(metrics.getLatencyP50Nanos() > 0);
+	}
+
+	@Test
+	public void apply_prunedContexts_countsBackoffs() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		RuntimeModel<Random> runtime = model.build(new Pruning(100, Integer.MAX_VALUE, 0));
+		Metrics metrics = new Metrics();
+		runtime.setMetrics(metrics);
+		runtime.apply(rand);
+		Assert.assertEquals(1, metrics.getNames());
+		Assert.assertEquals(metrics.getSteps(), metrics.getBackoffs());
+		Assert.assertEquals(1, metrics.getBackoffRate(), 0.0001);
+	}
+
+	@Test
+	public void apply_withoutMetrics_recordsNothing() {
+		MarkovModel model = new MarkovModel(3, 0f, ULocale.GERMAN);
+		model.update("thomas");
+		RuntimeModel<Random> runtime = model.build(Pruning.NONE);
+		Metrics metrics = new Metrics();
+		runtime.setMetrics(metrics);
+		runtime.setMetrics(null);
+		runtime.apply(rand);
+		Assert.assertEquals(0, metrics.getNames());
+	}
+
+	@Test
+	public void reset_afterRecording_clearsCounters() {
+		Metrics metrics = new Metrics();
+		metrics.recordName(5, 1, 0, 1000);
+		metrics.recordTraining(3, 12, 1000000);
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getNames());
+		Assert.assertEquals(0, metrics.getTrainedNames());
+		Assert.assertEquals(0, metrics.getLatencyP99Nanos());
+	}
+
+	@Test
+	public void getLatency_recordedValues_areWithinBucketPrecision() {
+		Metrics metrics = new Metrics();
+		for (int i = 1; i <= 1000; i++) {
+			metrics.recordName(1, 0, 0, i * 1000L);
+		}
+		Assert.assertEquals(500000, metrics.getLatencyP50Nanos(), 500000 / 8);
+		Assert.assertEquals(990000, metrics.getLatencyP99Nanos(), 990000 / 8);
+	}
+
+	@Test
+	public void register_twice_throws() {
+		Metrics metrics = new Metrics();
+		metrics.register("test");
+		try {
+			metrics.register("test");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		} finally {
+			metrics.unregister();
+		}
+	}
+}
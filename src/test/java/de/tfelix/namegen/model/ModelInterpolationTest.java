@@ -0,0 +1,85 @@
+package de.tfelix.namegen.model;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.ibm.icu.util.ULocale;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ModelInterpolationTest {
+
+	private static final String[] HISTORIES = { "", "a", "an", "ann", "anto", "o", "ot", "ola", "bo", "xq", "åke" };
+
+	@Test
+	public void build_sameLocale_isWeightedMixtureAtEveryStep() {
+		RuntimeModel<Random> a = TestModels.trained(2, 0.01f, ULocale.GERMAN, "anna", "anton", "annika");
+		RuntimeModel<Random> b = TestModels.trained(3, 0.01f, ULocale.GERMAN, "otto", "olaf", "bob", "anna");
+		RuntimeModel<Random> mixed = new ModelInterpolation().add(a, 0.7).add(b, 0.3).build();
+		Assert.assertEquals(3, mixed.order);
+		assertMixture(mixed, a, 0.7, b, 0.3);
+	}
+
+	@Test
+	public void build_differentLocales_keepsLettersOfBothAlphabets() {
+		RuntimeModel<Random> a = TestModels.trained(3, 0.01f, ULocale.GERMAN, "anna", "anton");
+		RuntimeModel<Random> b = TestModels.trained(3, 0.01f, new ULocale("fi"), "åke", "olavi", "otto");
+		RuntimeModel<Random> mixed = new ModelInterpolation().add(a, 2).add(b, 1).build();
+		Assert.assertEquals(a.language_code, mixed.language_code);
+		assertMixture(mixed, a, 2 / 3.0, b, 1 / 3.0);
+	}
+
+	@Test
+	public void build_trainableModels_generatesNamesOfBoth() {
+		MarkovModel a = new MarkovModel(3, 0f, ULocale.GERMAN);
+		a.update("thomas");
+		MarkovModel b = new MarkovModel(3, 0f, ULocale.GERMAN);
+		b.update("ulrike");
+		RuntimeModel<Random> mixed = new ModelInterpolation().add(a, 1).add(b, 1).build();
+		Set<String> names = new TreeSet<>();
+		Random random = new Random(3);
+		for (int i = 0; i < 200; i++) {
+			names.add(mixed.apply(random));
+		}
+		Assert.assertTrue(names.contains("thomas"));
+		Assert.assertTrue(names.contains("ulrike"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void add_zeroWeight_throws() {
+		new ModelInterpolation().add(TestModels.trained(2, 0.01f, ULocale.GERMAN, "anna"), 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void build_noModels_throws() {
+		new ModelInterpolation().build();
+	}
+
+	private static void assertMixture(RuntimeModel<Random> mixed, RuntimeModel<Random> a, double weightA,
+			RuntimeModel<Random> b, double weightB) {
+		Set<Integer> symbols = new TreeSet<>();
+		for (RuntimeModel<Random> model : new RuntimeModel[] { a, b }) {
+			for (int letter : model.getContexts().alphabetCodePoints()) {
+				symbols.add(letter);
+			}
+		}
+		symbols.add((int) SymbolManager.getEndSymbol());
+		double total = 0;
+		for (String history : HISTORIES) {
+			for (int symbol : symbols) {
+				double expected = weightA * probability(a, history, symbol) + weightB * probability(b, history, symbol);
+				Assert.assertEquals(history + new String(Character.toChars(symbol)), expected, probability(mixed, history, symbol), 1e-5);
+				total += expected;
+			}
+		}
+		Assert.assertEquals(HISTORIES.length, total, 1e-3);
+	}
+
+	private static double probability(RuntimeModel<Random> model, String history, int codePoint) {
+		ContextTrie contexts = model.getContexts();
+		SymbolTable symbols = contexts.symbols();
+		int[] ids = history.codePoints().map(symbols::id).toArray();
+		return contexts.probability(contexts.find(ids, 0, ids.length), symbols.id(codePoint));
+	}
+}
@@ -0,0 +1,36 @@
+package de.tfelix.namegen.model;
+
+import java.util.Random;
+
+import com.ibm.icu.util.ULocale;
+
+/**
+ * Trains the small models the tests generate with.
+ *
+ * @author Thomas Felix
+ */
+public final class TestModels {
+
+	private TestModels() {
+	}
+
+	/**
+	 * @param order
+	 *            The order of the model.
+	 * @param prior
+	 *            The prior probability of unseen letters.
+	 * @param locale
+	 *            The locale of the model.
+	 * @param names
+	 *            The names to train on.
+	 * @return The built model.
+	 */
+	@SuppressWarnings("unchecked")
+	public static RuntimeModel<Random> trained(int order, float prior, ULocale locale, String... names) {
+		MarkovModel model = new MarkovModel(order, prior, locale);
+		for (String name : names) {
+			model.update(name);
+		}
+		return model.build();
+	}
+}
@@ -38,7 +38,7 @@ public class TransitionTest {
 	
 	@Test
 	public void update_char_ok() {
-		Map<Character, Integer> histogram = new HashMap<>();
+		Map<Integer, Integer> histogram = new HashMap<>();
         UnicodeSet alphabet = LocaleData.getExemplarSet(ULocale.FRENCH, LocaleData.ES_STANDARD);
         // The ending character should be part of the histogram too. Sample at the Nyquist rate.
         int sampleResolution = 2 * (alphabet.size() + 1);
@@ -47,14 +47,14 @@ public class TransitionTest {
         training.update(favorite);
         Transition runtime = training.build();
 		for(int i = 0; i < sampleResolution; ++i) {
-		    char c = runtime.pick((float)i / sampleResolution);
+		    int c = runtime.pick((float)i / sampleResolution);
 		    if (histogram.containsKey(c)) {
 		        histogram.put(c, histogram.get(c) + 1);
             } else {
 		        histogram.put(c, 1);
             }
         }
-		Assert.assertTrue(histogram.get(favorite) > 3);  // 1 « 3 « 7
+		Assert.assertTrue(histogram.get((int) favorite) > 3);  // 1 « 3 « 7
 	}
 
 	/**
@@ -66,11 +66,11 @@ public class TransitionTest {
 		// todo
         UnicodeSet alphabet = LocaleData.getExemplarSet(ULocale.FRENCH, LocaleData.ES_STANDARD);
         Transition transition = new Transition(1.0f/(float)(alphabet.size()), ULocale.FRENCH);
-        Set<Character> observed = new HashSet<>();
+        Set<Integer> observed = new HashSet<>();
         Transition runtimeTransition = transition.build();
         float step = 1.0f/alphabet.size();
         for(float i = 0f; i < 1.0; i+= step) {
-            Character letter = runtimeTransition.pick(i);
+            int letter = runtimeTransition.pick(i);
             Assert.assertFalse(String.format("Letters were meant to be generated deterministically, so it should " +
                             "not be possible to see %s again after already seeing letters %s", letter,
                     observed.toString()),
@@ -80,4 +80,37 @@ public class TransitionTest {
         Assert.assertEquals(String.format("It was expected that all %d possible letters would be generated, but " +
                 "actually it was %d.", alphabet.size(), observed.size()), alphabet.size(), observed.size());
 	}
+
+	/**
+	 * The compiled lookup must select the same character as cumulating the observed distribution in order, and
+	 * beyond it a letter of the alphabet.
+	 */
+	@Test
+	public void pick_matchesCumulativeScan() {
+		Transition training = new Transition(0.01f, ULocale.FRENCH);
+		training.update('a');
+		training.update('a');
+		training.update('e');
+		Transition runtime = training.build();
+		for (int i = 0; i <= 100; ++i) {
+			float position = i / 100f;
+			int expected = SymbolManager.getEndSymbol();
+			float cumulation = 0f;
+			for (Map.Entry<String, Float> entry : runtime.getDistribution().entrySet()) {
+				cumulation += entry.getValue();
+				if (cumulation > position) {
+					expected = entry.getKey().codePointAt(0);
+					break;
+				}
+			}
+			if (cumulation <= position) {
+				// Every letter of the alphabet covers the same share of the rest.
+				int index = (int) ((position - cumulation) / runtime.getPrior());
+				if (index < runtime.getAlphabet().length) {
+					expected = runtime.getAlphabet()[index];
+				}
+			}
+			Assert.assertEquals(expected, runtime.pick(position));
+		}
+	}
 }